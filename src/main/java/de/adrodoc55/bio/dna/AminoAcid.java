@@ -70,7 +70,84 @@ public enum AminoAcid {
   TYR('Y'), //
   VAL('V'), //
   ;
+  private static final AminoAcid[] BY_3_LETTER_CODE = new AminoAcid[1 << 15];
+  private static final AminoAcid[] BY_CHAR_CODE = new AminoAcid[1 << 8];
+
+  static {
+    for (AminoAcid aminoAcid : values()) {
+      String name = aminoAcid.name();
+      BY_3_LETTER_CODE[key(name.charAt(0), name.charAt(1), name.charAt(2))] = aminoAcid;
+      BY_CHAR_CODE[aminoAcid.charCode] = aminoAcid;
+      BY_CHAR_CODE[Character.toLowerCase(aminoAcid.charCode)] = aminoAcid;
+    }
+  }
+
+  /**
+   * Packs three ASCII letters case insensitively into 15 bits.
+   *
+   * @return the key or -1 if one of the characters is not an ASCII letter
+   */
+  private static int key(int c0, int c1, int c2) {
+    int l0 = letterIndex(c0);
+    int l1 = letterIndex(c1);
+    int l2 = letterIndex(c2);
+    if ((l0 | l1 | l2) < 0) {
+      return -1;
+    }
+    return l0 << 10 | l1 << 5 | l2;
+  }
+
+  private static int letterIndex(int c) {
+    int lowerCase = c | 0x20;
+    return c < 0x80 && lowerCase >= 'a' && lowerCase <= 'z' ? lowerCase - 'a' : -1;
+  }
+
+  /**
+   * Looks up the aminoacid with the (case insensitive) 3 letter code at {@code offset} without
+   * allocating anything.
+   *
+   * @param code the characters containing the code
+   * @param offset the index of the first character of the code
+   * @return the {@link AminoAcid} or {@code null} if the code is unknown
+   */
+  public static AminoAcid lookup3LetterCode(CharSequence code, int offset) {
+    int key = key(code.charAt(offset), code.charAt(offset + 1), code.charAt(offset + 2));
+    return key < 0 ? null : BY_3_LETTER_CODE[key];
+  }
+
+  /**
+   * Like {@link #lookup3LetterCode(CharSequence, int)}, but for ASCII bytes.
+   */
+  public static AminoAcid lookup3LetterCode(byte[] code, int offset) {
+    int key = key(code[offset] & 0xff, code[offset + 1] & 0xff, code[offset + 2] & 0xff);
+    return key < 0 ? null : BY_3_LETTER_CODE[key];
+  }
+
+  /**
+   * Looks up the aminoacid with the (case insensitive) one letter code {@code code}.
+   *
+   * @param code the one letter code
+   * @return the {@link AminoAcid} or {@code null} if the code is unknown
+   */
+  public static AminoAcid lookupCharCode(char code) {
+    return code < BY_CHAR_CODE.length ? BY_CHAR_CODE[code] : null;
+  }
+
+  /**
+   * Like {@link #lookupCharCode(char)}, but for an ASCII byte.
+   */
+  public static AminoAcid lookupCharCode(byte code) {
+    return BY_CHAR_CODE[code & 0xff];
+  }
+
   public static AminoAcid from3LetterCode(String code) throws UnknownAminoAcidException {
+    if (code.length() == 3) {
+      AminoAcid result = lookup3LetterCode(code, 0);
+      if (result != null) {
+        return result;
+      }
+    }
+    // Non ASCII codes may still be valid after converting them to upper case
     String upperCase = code.toUpperCase(Locale.ENGLISH);
     try {
       return valueOf(upperCase);
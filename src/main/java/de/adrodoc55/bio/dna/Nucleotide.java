@@ -1,17 +1,42 @@
 package de.adrodoc55.bio.dna;
 
-import java.util.Locale;
-
 import de.adrodoc55.bio.dna.peptide.extractor.UnknownNucleotideException;
 
 public enum Nucleotide {
   A, C, G, T;
+  private static final Nucleotide[] BY_CHAR_CODE = new Nucleotide[1 << 8];
+
+  static {
+    for (Nucleotide nucleotide : values()) {
+      char code = nucleotide.name().charAt(0);
+      BY_CHAR_CODE[code] = nucleotide;
+      BY_CHAR_CODE[Character.toLowerCase(code)] = nucleotide;
+    }
+  }
+
+  /**
+   * Looks up the nucleotide with the (case insensitive) code {@code code} without allocating
+   * anything.
+   *
+   * @param code
+   * @return the {@link Nucleotide} or {@code null} if the code is unknown
+   */
+  public static Nucleotide lookup(char code) {
+    return code < BY_CHAR_CODE.length ? BY_CHAR_CODE[code] : null;
+  }
+
+  /**
+   * Like {@link #lookup(char)}, but for an ASCII byte.
+   */
+  public static Nucleotide lookup(byte code) {
+    return BY_CHAR_CODE[code & 0xff];
+  }
+
   public static Nucleotide fromCharCode(char code) throws UnknownNucleotideException {
-    String upperCase = String.valueOf(code).toUpperCase(Locale.ENGLISH);
-    try {
-      return valueOf(upperCase);
-    } catch (IllegalArgumentException ex) {
-      throw new UnknownNucleotideException("Unknown nucleotide " + code, ex);
+    Nucleotide result = lookup(code);
+    if (result == null) {
+      throw new UnknownNucleotideException("Unknown nucleotide " + code);
     }
+    return result;
   }
 }
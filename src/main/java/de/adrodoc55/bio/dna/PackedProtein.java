@@ -0,0 +1,404 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna;
+
+import java.util.Arrays;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A protein sequence that stores each residue as a 5 bit code, 12 residues per {@code long}, which
+ * takes about a third of the memory of a {@link StringBuilder}. The 20 {@link AminoAcid}s, the
+ * ambiguity codes {@code X}, {@code B}, {@code Z} and {@code J}, selenocysteine ({@code U}),
+ * pyrrolysine ({@code O}), the stop codon ({@code *}) and gaps ({@code -}) have their own code. Any
+ * other character, including lower case letters, is stored in a sorted side table, so no input is
+ * ever lost, but such sequences are slower and take more memory.
+ * <p>
+ * {@link #subSequence(int, int) Windows} share the codes of their protein instead of copying them.
+ * They are read only and only valid until their protein is {@link #clear() cleared}.
+ *
+ * @author Adrodoc55
+ */
+public final class PackedProtein implements CharSequence {
+  private static final int BITS_PER_CODE = 5;
+  private static final int CODES_PER_WORD = Long.SIZE / BITS_PER_CODE;
+  private static final int CODE_MASK = (1 << BITS_PER_CODE) - 1;
+  private static final int ESCAPE = CODE_MASK;
+  private static final String OTHER_RESIDUES = "XBZJUO*-";
+  private static final char[] CHARS = new char[ESCAPE];
+  private static final byte[] CODES = new byte[128];
+
+  static {
+    Arrays.fill(CODES, (byte) ESCAPE);
+    for (AminoAcid aminoAcid : AminoAcid.values()) {
+      define(aminoAcid.ordinal(), aminoAcid.getCharCode());
+    }
+    for (int i = 0; i < OTHER_RESIDUES.length(); i++) {
+      define(AminoAcid.values().length + i, OTHER_RESIDUES.charAt(i));
+    }
+  }
+
+  private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+  private static void define(int code, char c) {
+    CHARS[code] = c;
+    CODES[c] = (byte) code;
+  }
+
+  /**
+   * @param c a character
+   * @return the 5 bit code used to store {@code c} or -1 if {@code c} is stored in a side table
+   */
+  public static int getCode(char c) {
+    int code = c < CODES.length ? CODES[c] : ESCAPE;
+    return code == ESCAPE ? -1 : code;
+  }
+
+  /**
+   * @param code a 5 bit code returned by {@link #getCode(char)}
+   * @return the character stored as {@code code}
+   */
+  public static char getChar(int code) {
+    return CHARS[code];
+  }
+
+  private long[] words;
+  private int offset;
+  private int length;
+  private final boolean window;
+
+  private int[] escapeIndices;
+  private char[] escapeChars;
+  private int escapeCount;
+
+  public PackedProtein() {
+    this(1024);
+  }
+
+  /**
+   * @param capacity the initial number of residues that can be stored without growing
+   */
+  public PackedProtein(int capacity) {
+    words = new long[Math.max(1, (capacity + CODES_PER_WORD - 1) / CODES_PER_WORD)];
+    offset = 0;
+    window = false;
+    escapeIndices = new int[0];
+    escapeChars = new char[0];
+  }
+
+  private PackedProtein(PackedProtein protein, int start, int end) {
+    words = protein.words;
+    offset = protein.offset + start;
+    length = end - start;
+    window = true;
+    escapeIndices = protein.escapeIndices;
+    escapeChars = protein.escapeChars;
+    escapeCount = protein.escapeCount;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    checkIndex(index);
+    int i = offset + index;
+    int code = code(i);
+    if (code != ESCAPE) {
+      return CHARS[code];
+    }
+    return escapeChars[Arrays.binarySearch(escapeIndices, 0, escapeCount, i)];
+  }
+
+  /**
+   * Checks whether the residue at {@code index} is {@code aminoAcid} by comparing its code.
+   *
+   * @param index
+   * @param aminoAcid
+   * @return {@code true} if the residue is the upper case char code of {@code aminoAcid}
+   */
+  public boolean isAminoAcid(int index, AminoAcid aminoAcid) {
+    checkIndex(index);
+    return code(offset + index) == aminoAcid.ordinal();
+  }
+
+  /**
+   * Copies the residues from {@code start} to {@code end} into {@code dst} as ASCII bytes. Decodes
+   * the codes word by word, which is much faster than calling {@link #charAt(int)} for each
+   * residue.
+   *
+   * @param start the index of the first residue to copy
+   * @param end the index after the last residue to copy
+   * @param dst the destination array
+   * @param dstBegin the index in {@code dst} of the first residue
+   * @return {@code false} if a residue is not an ASCII character, in which case {@code dst} may be
+   *         partially written
+   */
+  public boolean getBytes(int start, int end, byte[] dst, int dstBegin) {
+    if (start < 0 || end > length || start > end) {
+      throw new StringIndexOutOfBoundsException(
+          "start " + start + ", end " + end + ", length " + length);
+    }
+    int i = offset + start;
+    int last = offset + end;
+    int e = Arrays.binarySearch(escapeIndices, 0, escapeCount, i);
+    if (e < 0) {
+      e = -e - 1;
+    }
+    int d = dstBegin;
+    while (i < last) {
+      int shift = i % CODES_PER_WORD * BITS_PER_CODE;
+      long word = words[i / CODES_PER_WORD] >>> shift;
+      int n = Math.min(CODES_PER_WORD - i % CODES_PER_WORD, last - i);
+      for (int k = 0; k < n; k++, word >>>= BITS_PER_CODE) {
+        int code = (int) word & CODE_MASK;
+        char c = code != ESCAPE ? CHARS[code] : escapeChars[e++];
+        if (c >= 0x80) {
+          return false;
+        }
+        dst[d++] = (byte) c;
+      }
+      i += n;
+    }
+    return true;
+  }
+
+  private int code(int i) {
+    return (int) (words[i / CODES_PER_WORD] >>> (i % CODES_PER_WORD * BITS_PER_CODE)) & CODE_MASK;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= length) {
+      throw new StringIndexOutOfBoundsException("index " + index + ", length " + length);
+    }
+  }
+
+  /**
+   * Returns a window of this protein that shares its codes.
+   */
+  @Override
+  public PackedProtein subSequence(int start, int end) {
+    checkRange(start, end);
+    return new PackedProtein(this, start, end);
+  }
+
+  /**
+   * Like {@link #subSequence(int, int)}, but points {@code window}, a window of any protein, to the
+   * specified range of this protein instead of allocating a new window.
+   *
+   * @param start the begin index, inclusive
+   * @param end the end index, exclusive
+   * @param window the window to reuse
+   * @return {@code window}
+   */
+  public PackedProtein subSequence(int start, int end, PackedProtein window) {
+    if (!window.window) {
+      throw new IllegalArgumentException("Only windows can be reused");
+    }
+    checkRange(start, end);
+    window.words = words;
+    window.offset = offset + start;
+    window.length = end - start;
+    window.escapeIndices = escapeIndices;
+    window.escapeChars = escapeChars;
+    window.escapeCount = escapeCount;
+    return window;
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < 0 || start > end || end > length) {
+      throw new StringIndexOutOfBoundsException(
+          "begin " + start + ", end " + end + ", length " + length);
+    }
+  }
+
+  public PackedProtein append(char c) {
+    ensureCapacity(1);
+    put(c);
+    return this;
+  }
+
+  public PackedProtein append(CharSequence s) {
+    int length = s.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      put(s.charAt(i));
+    }
+    return this;
+  }
+
+  /**
+   * Appends ASCII bytes without decoding them. Other bytes are appended as ISO-8859-1 characters.
+   *
+   * @param bytes
+   * @param offset the index of the first byte
+   * @param length the number of bytes
+   * @return this
+   */
+  public PackedProtein append(byte[] bytes, int offset, int length) {
+    ensureCapacity(length);
+    for (int i = offset, end = offset + length; i < end; i++) {
+      put((char) (bytes[i] & 0xff));
+    }
+    return this;
+  }
+
+  private void put(char c) {
+    int code = c < CODES.length ? CODES[c] : ESCAPE;
+    if (code == ESCAPE) {
+      if (escapeCount == escapeIndices.length) {
+        int capacity = Math.max(16, 2 * escapeCount);
+        escapeIndices = Arrays.copyOf(escapeIndices, capacity);
+        escapeChars = Arrays.copyOf(escapeChars, capacity);
+      }
+      escapeIndices[escapeCount] = length;
+      escapeChars[escapeCount] = c;
+      escapeCount++;
+    }
+    words[length / CODES_PER_WORD] |= (long) code << (length % CODES_PER_WORD * BITS_PER_CODE);
+    length++;
+  }
+
+  private void ensureCapacity(int additional) {
+    if (window) {
+      throw new UnsupportedOperationException("Windows are read only");
+    }
+    long required = ((long) length + additional + CODES_PER_WORD - 1) / CODES_PER_WORD;
+    if (required > words.length) {
+      if (required > Integer.MAX_VALUE - 8) {
+        throw new OutOfMemoryError("Protein too long");
+      }
+      words = Arrays.copyOf(words, (int) Math.max(required, Math.min(2L * words.length,
+          Integer.MAX_VALUE - 8)));
+    }
+  }
+
+  /**
+   * Removes all residues, invalidating all windows of this protein.
+   */
+  public void clear() {
+    if (window) {
+      throw new UnsupportedOperationException("Windows are read only");
+    }
+    Arrays.fill(words, 0, (length + CODES_PER_WORD - 1) / CODES_PER_WORD, 0);
+    length = 0;
+    escapeCount = 0;
+  }
+
+  /**
+   * Returns a copy of this protein (or window) that is not larger than necessary.
+   *
+   * @return the copy
+   */
+  public PackedProtein copy() {
+    PackedProtein result = new PackedProtein(length);
+    if (offset == 0) {
+      System.arraycopy(words, 0, result.words, 0, (length + CODES_PER_WORD - 1) / CODES_PER_WORD);
+      result.length = length;
+      int escapes = escapeCount;
+      while (escapes > 0 && escapeIndices[escapes - 1] >= length) {
+        escapes--;
+      }
+      result.escapeIndices = Arrays.copyOf(escapeIndices, escapes);
+      result.escapeChars = Arrays.copyOf(escapeChars, escapes);
+      result.escapeCount = escapes;
+    } else {
+      result.append(this);
+    }
+    return result;
+  }
+
+  /**
+   * Computes a 128 bit hash of the residues of this protein. Equal sequences have the same
+   * fingerprint, regardless of whether they are windows, and different sequences are practically
+   * guaranteed to have different fingerprints.
+   *
+   * @return the fingerprint
+   */
+  public HashCode fingerprint() {
+    Hasher hasher = FINGERPRINT.newHasher();
+    hasher.putInt(length);
+    for (int i = 0; i < length; i += CODES_PER_WORD) {
+      hasher.putLong(getWord(i));
+    }
+    for (int e = 0; e < escapeCount; e++) {
+      int index = escapeIndices[e] - offset;
+      if (index >= 0 && index < length) {
+        hasher.putInt(index).putChar(escapeChars[e]);
+      }
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * @param index the index of the first residue of the word, a multiple of 12
+   * @return the codes of the 12 residues from {@code index}, padded with zeros at the end
+   */
+  private long getWord(int index) {
+    int i = offset + index;
+    int shift = i % CODES_PER_WORD * BITS_PER_CODE;
+    long word = words[i / CODES_PER_WORD] >>> shift;
+    if (shift != 0 && i / CODES_PER_WORD + 1 < words.length) {
+      word |= words[i / CODES_PER_WORD + 1] << (CODES_PER_WORD * BITS_PER_CODE - shift);
+    }
+    word &= (1L << (CODES_PER_WORD * BITS_PER_CODE)) - 1;
+    int remaining = length - index;
+    if (remaining < CODES_PER_WORD) {
+      word &= (1L << (remaining * BITS_PER_CODE)) - 1;
+    }
+    return word;
+  }
+
+  @Override
+  public String toString() {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = charAt(i);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Decompresses a BGZF file (a series of independent gzip members of at most 64 KiB each, as written
+ * by bgzip and samtools). The blocks are inflated concurrently by a pool of threads while the
+ * decompressed bytes are returned strictly in order. At most two blocks per thread are in flight,
+ * so memory usage does not depend on the size of the input.
+ *
+ * @author Adrodoc55
+ */
+public class BgzfInputStream extends InputStream {
+  private static final int FIXED_HEADER_SIZE = 12;
+  private static final int TRAILER_SIZE = 8;
+  private static final int FEXTRA = 4;
+
+  /**
+   * Checks whether {@code header} is the beginning of a BGZF block.
+   *
+   * @param header the first bytes of a file
+   * @param length the number of valid bytes in {@code header}
+   * @return {@code true} if {@code header} starts with a gzip header containing a BGZF extra field
+   */
+  public static boolean isBgzf(byte[] header, int length) {
+    if (length < 18 || !isGzip(header, length) || (header[3] & FEXTRA) == 0) {
+      return false;
+    }
+    return header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+  }
+
+  public static boolean isGzip(byte[] header, int length) {
+    return length >= 2 && header[0] == (byte) 0x1f && header[1] == (byte) 0x8b;
+  }
+
+  private final InputStream in;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private final byte[] header = new byte[FIXED_HEADER_SIZE];
+  private boolean endOfBlocks;
+  private byte[] current = new byte[0];
+  private int currentPosition;
+
+  /**
+   * @param in the compressed input
+   * @param threads the number of threads used to inflate blocks
+   */
+  public BgzfInputStream(InputStream in, int threads) {
+    this.in = in;
+    executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bgzf-inflater-%d").build());
+    maxPendingBlocks = 2 * threads;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureAvailable()) {
+      return -1;
+    }
+    return current[currentPosition++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureAvailable()) {
+      return -1;
+    }
+    int count = Math.min(len, current.length - currentPosition);
+    System.arraycopy(current, currentPosition, b, off, count);
+    currentPosition += count;
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return current.length - currentPosition;
+  }
+
+  private boolean ensureAvailable() throws IOException {
+    while (currentPosition >= current.length) {
+      while (!endOfBlocks && pendingBlocks.size() < maxPendingBlocks) {
+        Future<byte[]> block = readBlock();
+        if (block == null) {
+          endOfBlocks = true;
+        } else {
+          pendingBlocks.add(block);
+        }
+      }
+      Future<byte[]> next = pendingBlocks.poll();
+      if (next == null) {
+        return false;
+      }
+      current = await(next);
+      currentPosition = 0;
+    }
+    return true;
+  }
+
+  private static byte[] await(Future<byte[]> block) throws IOException {
+    try {
+      return block.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while inflating a BGZF block", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Reads the next compressed block and schedules it for inflation.
+   *
+   * @return the inflated block or {@code null} at the end of the input
+   */
+  private Future<byte[]> readBlock() throws IOException {
+    int read = readFully(header, 0, FIXED_HEADER_SIZE);
+    if (read == 0) {
+      return null;
+    }
+    if (read < FIXED_HEADER_SIZE || !isGzip(header, read) || (header[3] & FEXTRA) == 0) {
+      throw new ZipException("Not a BGZF block");
+    }
+    int extraLength = uint16(header, 10);
+    byte[] extra = new byte[extraLength];
+    if (readFully(extra, 0, extraLength) < extraLength) {
+      throw new EOFException("Unexpected end of BGZF block");
+    }
+    int blockSize = -1;
+    for (int i = 0; i + 4 <= extraLength; i += 4 + uint16(extra, i + 2)) {
+      if (extra[i] == 'B' && extra[i + 1] == 'C' && uint16(extra, i + 2) == 2) {
+        blockSize = uint16(extra, i + 4) + 1;
+      }
+    }
+    int remaining = blockSize - FIXED_HEADER_SIZE - extraLength;
+    if (blockSize < 0 || remaining < TRAILER_SIZE) {
+      throw new ZipException("Missing or invalid BGZF block size");
+    }
+    byte[] block = new byte[remaining];
+    if (readFully(block, 0, remaining) < remaining) {
+      throw new EOFException("Unexpected end of BGZF block");
+    }
+    return executor.submit(() -> inflate(block));
+  }
+
+  private static byte[] inflate(byte[] block) throws ZipException {
+    int compressedSize = block.length - TRAILER_SIZE;
+    long expectedCrc = uint32(block, compressedSize);
+    int size = (int) uint32(block, compressedSize + 4);
+    byte[] result = new byte[size];
+    if (size > 0) {
+      Inflater inflater = new Inflater(true);
+      try {
+        inflater.setInput(block, 0, compressedSize);
+        if (inflater.inflate(result) != size || !inflater.finished()) {
+          throw new ZipException("Corrupt BGZF block: unexpected uncompressed size");
+        }
+      } catch (DataFormatException ex) {
+        throw new ZipException("Corrupt BGZF block: " + ex.getLocalizedMessage());
+      } finally {
+        inflater.end();
+      }
+    }
+    CRC32 crc = new CRC32();
+    crc.update(result, 0, size);
+    if (crc.getValue() != expectedCrc) {
+      throw new ZipException("Corrupt BGZF block: CRC mismatch");
+    }
+    return result;
+  }
+
+  private int readFully(byte[] b, int off, int len) throws IOException {
+    int total = 0;
+    while (total < len) {
+      int read = in.read(b, off + total, len - total);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  private static int uint16(byte[] b, int off) {
+    return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+  }
+
+  private static long uint32(byte[] b, int off) {
+    return uint16(b, off) | (long) uint16(b, off + 2) << 16;
+  }
+
+  @Override
+  public void close() throws IOException {
+    executor.shutdownNow();
+    in.close();
+  }
+}
@@ -0,0 +1,399 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+
+/**
+ * An index of the records of an uncompressed FASTA file, similar to a samtools {@code .fai} file.
+ * For each record it stores the record number (1 based), the offset of the header, the offset of
+ * the sequence, the number of residues and the number of residues in the first sequence line.
+ * <p>
+ * The index is stored next to the FASTA file with the suffix {@value #SUFFIX}. Its first line
+ * records the size and modification time of the indexed file, so an outdated index is detected and
+ * rebuilt automatically.
+ *
+ * @author Adrodoc55
+ */
+public class FastaIndex {
+  public static final String SUFFIX = ".fidx";
+  private static final String TMP_EXTENSION = ".tmp";
+  /**
+   * The suffix of the temporary file an index is written to before it replaces the index file.
+   */
+  public static final String TMP_SUFFIX = SUFFIX + TMP_EXTENSION;
+  private static final String MAGIC = "#fasta-index";
+  private static final Splitter TAB = Splitter.on('\t');
+
+  public static Path getIndexPath(Path input) {
+    return input.resolveSibling(input.getFileName() + SUFFIX);
+  }
+
+  /**
+   * @param input a file
+   * @return {@code true} if {@code input} is gzip (or BGZF) compressed and can not be indexed
+   * @throws IOException
+   */
+  public static boolean isCompressed(Path input) throws IOException {
+    byte[] magic = new byte[2];
+    try (InputStream in = Files.newInputStream(input)) {
+      return BgzfInputStream.isGzip(magic, ByteStreams.read(in, magic, 0, magic.length));
+    }
+  }
+
+  /**
+   * Loads the index of {@code input} if it is valid and up to date, otherwise the index is built
+   * and written. If the index can not be written, for instance because the directory of
+   * {@code input} is read only, the built index is only kept in memory and a warning is printed.
+   *
+   * @param input the FASTA file
+   * @return the index
+   * @throws IOException if {@code input} can not be read
+   */
+  public static FastaIndex loadOrBuild(Path input) throws IOException {
+    Path indexPath = getIndexPath(input);
+    if (Files.isRegularFile(indexPath)) {
+      try {
+        FastaIndex index = load(indexPath);
+        if (index.isUpToDate(input)) {
+          return index;
+        }
+      } catch (IOException ex) {
+        System.err.println("Rebuilding the index " + indexPath + " due to: "
+            + ex.getLocalizedMessage());
+      }
+    }
+    FastaIndex index = build(input);
+    try {
+      index.write(indexPath);
+    } catch (IOException ex) {
+      // The message of an AccessDeniedException is just the path
+      System.err.println("Could not write the index " + indexPath
+          + ", so it is rebuilt by the next run: " + ex);
+    }
+    return index;
+  }
+
+  /**
+   * Builds the index of {@code input} in a single streaming pass.
+   *
+   * @param input an uncompressed FASTA file
+   * @return the index
+   * @throws IOException
+   */
+  public static FastaIndex build(Path input) throws IOException {
+    long size = Files.size(input);
+    long lastModified = Files.getLastModifiedTime(input).toMillis();
+    FastaIndex index = new FastaIndex(size, lastModified);
+    if (isCompressed(input)) {
+      throw new IOException("Only uncompressed FASTA files can be indexed: " + input);
+    }
+    try (InputStream in = Files.newInputStream(input)) {
+      new Scanner(index).scan(in);
+    }
+    return index;
+  }
+
+  /**
+   * Scans lines like {@link FastaReader}: a line is terminated by {@code \n}, {@code \r} or
+   * {@code \r\n}, sequence lines are trimmed and comment lines are ignored.
+   */
+  private static class Scanner {
+    private final FastaIndex index;
+    private long offset;
+    private long lineStart;
+    private int first = -1;
+    private int trimmedStart = -1;
+    private int trimmedEnd;
+    private boolean afterCr;
+    private boolean inRecord;
+    private long sequenceLength;
+    private int lineWidth;
+
+    Scanner(FastaIndex index) {
+      this.index = index;
+    }
+
+    void scan(InputStream in) throws IOException {
+      byte[] buffer = new byte[1 << 16];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        for (int i = 0; i < read; i++, offset++) {
+          byte b = buffer[i];
+          if (b == '\n' && afterCr) {
+            afterCr = false;
+            lineStart = offset + 1;
+          } else if (b == '\n' || b == '\r') {
+            afterCr = b == '\r';
+            endLine(offset + 1);
+          } else {
+            afterCr = false;
+            int column = (int) (offset - lineStart);
+            if (first < 0) {
+              first = b & 0xff;
+            }
+            if ((b & 0xff) > ' ') {
+              if (trimmedStart < 0) {
+                trimmedStart = column;
+              }
+              trimmedEnd = column + 1;
+            }
+          }
+        }
+      }
+      if (first >= 0) {
+        endLine(offset);
+      }
+      endRecord();
+    }
+
+    private void endLine(long next) {
+      if (first == '>') {
+        endRecord();
+        inRecord = true;
+        index.add(lineStart, next);
+      } else if (inRecord && first != ';' && trimmedStart >= 0) {
+        int width = trimmedEnd - trimmedStart;
+        if (lineWidth == 0) {
+          lineWidth = width;
+        }
+        sequenceLength += width;
+      }
+      lineStart = next;
+      first = -1;
+      trimmedStart = -1;
+    }
+
+    private void endRecord() {
+      if (inRecord) {
+        index.complete(sequenceLength, lineWidth);
+      }
+      sequenceLength = 0;
+      lineWidth = 0;
+    }
+  }
+
+  /**
+   * Loads an index file.
+   *
+   * @param indexPath the index file
+   * @return the index
+   * @throws IOException if the file is not a valid index
+   */
+  public static FastaIndex load(Path indexPath) throws IOException {
+    try (BufferedReader in = Files.newBufferedReader(indexPath, US_ASCII)) {
+      List<String> header = TAB.splitToList(String.valueOf(in.readLine()));
+      if (header.size() != 3 || !MAGIC.equals(header.get(0))) {
+        throw new IOException("Not a FASTA index: " + indexPath);
+      }
+      FastaIndex index =
+          new FastaIndex(Long.parseLong(header.get(1)), Long.parseLong(header.get(2)));
+      String line;
+      while ((line = in.readLine()) != null) {
+        List<String> columns = TAB.splitToList(line);
+        if (columns.size() != 5 || Integer.parseInt(columns.get(0)) != index.size() + 1) {
+          throw new IOException("Corrupt FASTA index " + indexPath + ": " + line);
+        }
+        index.add(Long.parseLong(columns.get(1)), Long.parseLong(columns.get(2)));
+        index.complete(Long.parseLong(columns.get(3)), Integer.parseInt(columns.get(4)));
+      }
+      return index;
+    } catch (NumberFormatException ex) {
+      throw new IOException("Corrupt FASTA index " + indexPath, ex);
+    }
+  }
+
+  private final long inputSize;
+  private final long inputLastModified;
+  private int size;
+  private long[] headerOffsets = new long[1024];
+  private long[] sequenceOffsets = new long[1024];
+  private long[] sequenceLengths = new long[1024];
+  private int[] lineWidths = new int[1024];
+
+  private FastaIndex(long inputSize, long inputLastModified) {
+    this.inputSize = inputSize;
+    this.inputLastModified = inputLastModified;
+  }
+
+  private void add(long headerOffset, long sequenceOffset) {
+    if (size == headerOffsets.length) {
+      int capacity = 2 * size;
+      headerOffsets = Arrays.copyOf(headerOffsets, capacity);
+      sequenceOffsets = Arrays.copyOf(sequenceOffsets, capacity);
+      sequenceLengths = Arrays.copyOf(sequenceLengths, capacity);
+      lineWidths = Arrays.copyOf(lineWidths, capacity);
+    }
+    headerOffsets[size] = headerOffset;
+    sequenceOffsets[size] = sequenceOffset;
+    size++;
+  }
+
+  private void complete(long sequenceLength, int lineWidth) {
+    sequenceLengths[size - 1] = sequenceLength;
+    lineWidths[size - 1] = lineWidth;
+  }
+
+  /**
+   * Writes this index to {@code indexPath}. The file is replaced atomically, on failure the
+   * temporary file is deleted.
+   *
+   * @param indexPath
+   * @throws IOException
+   */
+  public void write(Path indexPath) throws IOException {
+    Path tmp = indexPath.resolveSibling(indexPath.getFileName() + TMP_EXTENSION);
+    try {
+      try (BufferedWriter out = Files.newBufferedWriter(tmp, US_ASCII)) {
+        out.write(MAGIC + '\t' + inputSize + '\t' + inputLastModified);
+        out.newLine();
+        for (int i = 0; i < size; i++) {
+          out.write((i + 1) + "\t" + headerOffsets[i] + '\t' + sequenceOffsets[i] + '\t'
+              + sequenceLengths[i] + '\t' + lineWidths[i]);
+          out.newLine();
+        }
+      }
+      Files.move(tmp, indexPath, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException ex) {
+      try {
+        Files.deleteIfExists(tmp);
+      } catch (IOException suppressed) {
+        ex.addSuppressed(suppressed);
+      }
+      throw ex;
+    }
+  }
+
+  public boolean isUpToDate(Path input) throws IOException {
+    return Files.size(input) == inputSize
+        && Files.getLastModifiedTime(input).toMillis() == inputLastModified;
+  }
+
+  /**
+   * @return the number of records
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param record the (1 based) record number
+   */
+  public long getHeaderOffset(int record) {
+    return headerOffsets[record - 1];
+  }
+
+  /**
+   * @param record the (1 based) record number
+   */
+  public long getSequenceOffset(int record) {
+    return sequenceOffsets[record - 1];
+  }
+
+  /**
+   * @param record the (1 based) record number
+   */
+  public long getSequenceLength(int record) {
+    return sequenceLengths[record - 1];
+  }
+
+  /**
+   * @param record the (1 based) record number
+   */
+  public int getLineWidth(int record) {
+    return lineWidths[record - 1];
+  }
+
+  /**
+   * @param record the (1 based) record number
+   * @return the offset of the first byte after the record
+   */
+  public long getEndOffset(int record) {
+    return record < size ? headerOffsets[record] : inputSize;
+  }
+
+  /**
+   * Cuts the records {@code fromRecord} to {@code toRecord} (inclusive, 1 based) of {@code input}
+   * into at most {@code parts} splits of roughly the same number of bytes. Splits always start at
+   * a record header.
+   *
+   * @param input the indexed FASTA file
+   * @param fromRecord the first record
+   * @param toRecord the last record
+   * @param parts the maximum number of splits
+   * @return the splits in input order
+   */
+  public List<FastaSplit> split(Path input, int fromRecord, int toRecord, int parts) {
+    List<FastaSplit> result = new ArrayList<>();
+    if (fromRecord > toRecord) {
+      return result;
+    }
+    long start = getHeaderOffset(fromRecord);
+    long end = getEndOffset(toRecord);
+    int record = fromRecord;
+    for (int part = 1; part <= parts && record <= toRecord; part++) {
+      long target = start + (end - start) * part / parts;
+      int next = record + 1;
+      while (next <= toRecord && getHeaderOffset(next) < target) {
+        next++;
+      }
+      result.add(new FastaSplit(input, getHeaderOffset(record), getEndOffset(next - 1)));
+      record = next;
+    }
+    return result;
+  }
+}
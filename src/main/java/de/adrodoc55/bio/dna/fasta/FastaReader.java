@@ -0,0 +1,168 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * Reads a FASTA file record by record. Offsets are byte offsets in the (uncompressed) input.
+ *
+ * @author Adrodoc55
+ */
+public interface FastaReader extends Closeable {
+  /**
+   * Advances to the next record, skipping the remaining sequence of the current record.
+   *
+   * @return {@code false} if there are no more records
+   */
+  boolean nextRecord() throws IOException;
+
+  /**
+   * Positions this reader at {@code offset} which must be the beginning of a line, usually the
+   * offset of a record header. Readers of sequential input can only seek forward.
+   *
+   * @param offset the new position
+   * @throws IOException if the reader can not be positioned at {@code offset}
+   */
+  void seek(long offset) throws IOException;
+
+  /**
+   * @return the header line of the current record including the leading {@code '>'}
+   */
+  String getHeader();
+
+  long getHeaderOffset();
+
+  long getSequenceOffset();
+
+  /**
+   * @return the offset of the first byte after the current record
+   */
+  long getEndOffset() throws IOException;
+
+  /**
+   * Appends the sequence of the current record to {@code sequence}. Comment lines are skipped and
+   * each line is trimmed like {@link String#trim()}.
+   *
+   * @param sequence
+   */
+  default void readSequence(StringBuilder sequence) throws IOException {
+    readSequence(sequence, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Appends the beginning of the sequence of the current record to {@code sequence}, like
+   * {@link #readSequence(StringBuilder)}, but stops after {@code maxLength} characters. Lines
+   * that are not plain ASCII are always appended entirely. The rest of the sequence is skipped
+   * without being decoded.
+   *
+   * @param sequence
+   * @param maxLength the maximum number of characters to append
+   */
+  void readSequence(StringBuilder sequence, int maxLength) throws IOException;
+
+  /**
+   * Like {@link #readSequence(StringBuilder)}, but packs the sequence into {@code sequence}.
+   *
+   * @param sequence
+   */
+  default void readSequence(PackedProtein sequence) throws IOException {
+    readSequence(sequence, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Like {@link #readSequence(StringBuilder, int)}, but packs the sequence into {@code sequence}.
+   * Plain ASCII lines are packed straight from the input bytes.
+   *
+   * @param sequence
+   * @param maxLength the maximum number of characters to append
+   */
+  default void readSequence(PackedProtein sequence, int maxLength) throws IOException {
+    readSequence(sequence, 0, maxLength);
+  }
+
+  /**
+   * Like {@link #readSequence(PackedProtein, int)}, but skips up to {@code skip} leading characters
+   * of the sequence without copying them, so only the characters from the returned index to
+   * {@code end} are appended. Characters are only skipped in plain ASCII lines and only if
+   * sequences are not {@link #setNormalizeSequences(boolean) normalized}, otherwise the number of
+   * characters in a line is not known without decoding it. Skipping stops at the first line that
+   * can not be skipped.
+   *
+   * @param sequence
+   * @param skip the maximum number of leading characters to skip
+   * @param end the index in the sequence after the last character to append
+   * @return the number of characters that were skipped, which is the index in the sequence of the
+   *         first appended character
+   */
+  int readSequence(PackedProtein sequence, int skip, int end) throws IOException;
+
+  /**
+   * Enables or disables the normalization of sequences. A normalized sequence is upper-cased and
+   * all whitespace is removed from its lines. It is only read up to the first character that is
+   * neither whitespace nor a residue (a letter, {@code '*'} or {@code '-'}), which is reported by
+   * {@link #getInvalidResidueIndex()}.
+   *
+   * @param normalize
+   */
+  void setNormalizeSequences(boolean normalize);
+
+  /**
+   * @return the index in the sequence of the first invalid residue found by the last call to
+   *         {@code readSequence} or -1 if the sequence was not normalized or is valid
+   */
+  int getInvalidResidueIndex();
+
+  /**
+   * @return the first invalid residue found by the last call to {@code readSequence}, the first
+   *         byte of it as ISO-8859-1 character if it is not ASCII
+   */
+  char getInvalidResidue();
+
+  /**
+   * @return the (1 based) line number of the header of the current record
+   */
+  int getHeaderLineNumber();
+}
@@ -0,0 +1,122 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * @author Adrodoc55
+ */
+public class FastaReaders {
+  /**
+   * The path {@code -} which denotes the standard input.
+   */
+  public static final Path STDIN = Paths.get("-");
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int MAGIC_SIZE = 18;
+
+  /**
+   * Opens a {@link FastaReader} for the specified file. Uncompressed files are memory mapped, gzip
+   * compressed files are decompressed on the fly. BGZF compressed files are decompressed using
+   * {@code threads} threads. If {@code path} is {@link #STDIN} the standard input is read.
+   *
+   * @param path the FASTA file to read
+   * @param threads the number of threads that may be used for decompression
+   * @return the {@link FastaReader}
+   * @throws IOException
+   */
+  public static FastaReader open(Path path, int threads) throws IOException {
+    if (STDIN.equals(path)) {
+      return open(new FileInputStream(FileDescriptor.in), threads);
+    }
+    byte[] magic = new byte[MAGIC_SIZE];
+    int length;
+    try (InputStream in = Files.newInputStream(path)) {
+      length = ByteStreams.read(in, magic, 0, MAGIC_SIZE);
+    }
+    if (!BgzfInputStream.isGzip(magic, length)) {
+      return new MappedFastaReader(path);
+    }
+    InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+    return new StreamFastaReader(decompress(in, magic, length, threads));
+  }
+
+  /**
+   * Opens a {@link FastaReader} that reads {@code in} sequentially. Compressed input is detected
+   * like in {@link #open(Path, int)}.
+   *
+   * @param in the FASTA input
+   * @param threads the number of threads that may be used for decompression
+   * @return the {@link FastaReader}
+   * @throws IOException
+   */
+  public static FastaReader open(InputStream in, int threads) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+    byte[] magic = new byte[MAGIC_SIZE];
+    buffered.mark(MAGIC_SIZE);
+    int length = ByteStreams.read(buffered, magic, 0, MAGIC_SIZE);
+    buffered.reset();
+    return new StreamFastaReader(decompress(buffered, magic, length, threads));
+  }
+
+  private static InputStream decompress(InputStream in, byte[] magic, int length, int threads)
+      throws IOException {
+    if (threads > 1 && BgzfInputStream.isBgzf(magic, length)) {
+      return new BgzfInputStream(in, threads);
+    } else if (BgzfInputStream.isGzip(magic, length)) {
+      return new GZIPInputStream(in, BUFFER_SIZE);
+    } else {
+      return in;
+    }
+  }
+}
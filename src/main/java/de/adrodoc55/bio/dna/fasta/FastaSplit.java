@@ -0,0 +1,125 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A FASTA file or a byte range of an uncompressed FASTA file that starts at a record header.
+ *
+ * @author Adrodoc55
+ */
+public class FastaSplit {
+  /**
+   * @param path a FASTA file
+   * @return a split covering the entire file
+   */
+  public static FastaSplit of(Path path) {
+    return new FastaSplit(path, 0, -1);
+  }
+
+  private final Path path;
+  private final long start;
+  private final long end;
+
+  /**
+   * @param path an uncompressed FASTA file
+   * @param start the offset of the first header
+   * @param end the offset of the first byte after the last record or -1 for the end of the file
+   */
+  public FastaSplit(Path path, long start, long end) {
+    this.path = path;
+    this.start = start;
+    this.end = end;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  public boolean isEntireFile() {
+    return start == 0 && end < 0;
+  }
+
+  /**
+   * @return the number of bytes in this split, for compressed files this is the compressed size and
+   *         for {@link FastaReaders#STDIN} it is {@link Long#MAX_VALUE}
+   * @throws IOException
+   */
+  public long length() throws IOException {
+    if (FastaReaders.STDIN.equals(path)) {
+      return Long.MAX_VALUE;
+    }
+    return (end < 0 ? Files.size(path) : end) - start;
+  }
+
+  /**
+   * Opens a {@link FastaReader} that only returns the records of this split.
+   *
+   * @param threads the number of threads that may be used for decompression
+   * @return the {@link FastaReader}
+   * @throws IOException
+   */
+  public FastaReader open(int threads) throws IOException {
+    if (isEntireFile()) {
+      return FastaReaders.open(path, threads);
+    }
+    MappedFastaReader reader = new MappedFastaReader(path);
+    reader.setRange(start, end);
+    return reader;
+  }
+
+  @Override
+  public String toString() {
+    return isEntireFile() ? path.toString() : path + "[" + start + ", " + end + ")";
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.nio.charset.Charset;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * Decodes raw FASTA lines. Lines that only contain ASCII bytes are converted directly, all other
+ * lines are decoded using the configured {@link Charset}. If residues are
+ * {@link #setNormalizeResidues(boolean) normalized}, sequence lines are appended as normalized by
+ * a {@link ResidueNormalizer} instead.
+ *
+ * @author Adrodoc55
+ */
+final class LineDecoder {
+  private final Charset charset;
+  private char[] chars = new char[256];
+  private ResidueNormalizer normalizer;
+  private int invalidResidueIndex = -1;
+  private char invalidResidue;
+
+  LineDecoder(Charset charset) {
+    this.charset = charset;
+  }
+
+  void setNormalizeResidues(boolean normalize) {
+    normalizer = normalize ? new ResidueNormalizer() : null;
+  }
+
+  boolean isNormalizeResidues() {
+    return normalizer != null;
+  }
+
+  /**
+   * @return the index in the sequence of the first invalid residue that was appended since the
+   *         last {@link #resetInvalidResidue() reset} or -1
+   */
+  int getInvalidResidueIndex() {
+    return invalidResidueIndex;
+  }
+
+  /**
+   * @return the invalid residue, the first byte of it as ISO-8859-1 character if it is not ASCII
+   */
+  char getInvalidResidue() {
+    return invalidResidue;
+  }
+
+  void resetInvalidResidue() {
+    invalidResidueIndex = -1;
+  }
+
+  String decode(byte[] bytes, int offset, int length) {
+    return new String(bytes, offset, length, isAscii(bytes, offset, length) ? ISO_8859_1 : charset);
+  }
+
+  /**
+   * Appends the specified line to {@code sb}, trimmed like {@link String#trim()}. Of a plain ASCII
+   * line at most {@code maxChars} characters are appended.
+   */
+  void appendTrimmed(byte[] bytes, int offset, int length, int maxChars, StringBuilder sb) {
+    if (normalizer != null) {
+      appendNormalized(bytes, offset, length, maxChars, sb);
+      return;
+    }
+    int end = offset + length;
+    while (offset < end && (bytes[offset] & 0xff) <= ' ') {
+      offset++;
+    }
+    while (offset < end && (bytes[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    length = end - offset;
+    if (!appendAscii(bytes, offset, Math.min(length, maxChars), sb)) {
+      sb.append(new String(bytes, offset, length, charset).trim());
+    }
+  }
+
+  /**
+   * Appends the specified bytes to {@code sb} if they are plain ASCII.
+   *
+   * @return {@code false} if nothing was appended, because the bytes are not plain ASCII
+   */
+  boolean appendAscii(byte[] bytes, int offset, int length, StringBuilder sb) {
+    if (normalizer != null) {
+      appendNormalized(bytes, offset, length, Integer.MAX_VALUE, sb);
+      return true;
+    }
+    if (!isAscii(bytes, offset, length)) {
+      return false;
+    }
+    if (chars.length < length) {
+      chars = new char[Math.max(length, 2 * chars.length)];
+    }
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) bytes[offset + i];
+    }
+    sb.append(chars, 0, length);
+    return true;
+  }
+
+  /**
+   * Like {@link #appendTrimmed(byte[], int, int, int, StringBuilder)}, but plain ASCII lines are
+   * packed into {@code protein} without being decoded.
+   */
+  void appendTrimmed(byte[] bytes, int offset, int length, int maxChars, PackedProtein protein) {
+    if (normalizer != null) {
+      appendNormalized(bytes, offset, length, maxChars, protein);
+      return;
+    }
+    int end = offset + length;
+    while (offset < end && (bytes[offset] & 0xff) <= ' ') {
+      offset++;
+    }
+    while (offset < end && (bytes[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    length = end - offset;
+    if (!appendAscii(bytes, offset, Math.min(length, maxChars), protein)) {
+      protein.append(new String(bytes, offset, length, charset).trim());
+    }
+  }
+
+  /**
+   * Packs the specified bytes into {@code protein} if they are plain ASCII.
+   *
+   * @return {@code false} if nothing was appended, because the bytes are not plain ASCII
+   */
+  boolean appendAscii(byte[] bytes, int offset, int length, PackedProtein protein) {
+    if (normalizer != null) {
+      appendNormalized(bytes, offset, length, Integer.MAX_VALUE, protein);
+      return true;
+    }
+    if (!isAscii(bytes, offset, length)) {
+      return false;
+    }
+    protein.append(bytes, offset, length);
+    return true;
+  }
+
+  /**
+   * Appends at most {@code maxChars} normalized residues of the specified line to {@code sb}. If
+   * the line contains an invalid residue before that limit, it is recorded as the
+   * {@link #getInvalidResidueIndex() invalid residue}.
+   */
+  private void appendNormalized(byte[] bytes, int offset, int length, int maxChars,
+      StringBuilder sb) {
+    int normalized = normalizer.normalize(bytes, offset, length);
+    int count = Math.min(normalizer.length(), maxChars);
+    if (chars.length < count) {
+      chars = new char[Math.max(count, 2 * chars.length)];
+    }
+    byte[] residues = normalizer.getResidues();
+    for (int i = 0; i < count; i++) {
+      chars[i] = (char) residues[i];
+    }
+    sb.append(chars, 0, count);
+    if (normalized < length && count == normalizer.length()) {
+      recordInvalidResidue(sb.length(), bytes[offset + normalized]);
+    }
+  }
+
+  /**
+   * Like {@link #appendNormalized(byte[], int, int, int, StringBuilder)}, but packs the residues
+   * into {@code protein}.
+   */
+  private void appendNormalized(byte[] bytes, int offset, int length, int maxChars,
+      PackedProtein protein) {
+    int normalized = normalizer.normalize(bytes, offset, length);
+    int count = Math.min(normalizer.length(), maxChars);
+    protein.append(normalizer.getResidues(), 0, count);
+    if (normalized < length && count == normalizer.length()) {
+      recordInvalidResidue(protein.length(), bytes[offset + normalized]);
+    }
+  }
+
+  private void recordInvalidResidue(int index, byte residue) {
+    if (invalidResidueIndex < 0) {
+      invalidResidueIndex = index;
+      invalidResidue = (char) (residue & 0xff);
+    }
+  }
+
+  static boolean isAscii(byte[] bytes, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (bytes[i] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * A FASTA reader that memory maps the input file and scans it byte by byte instead of decoding it
+ * into lines. Files larger than a single {@link MappedByteBuffer} are mapped in chunks. Records are
+ * described by byte offsets, line numbers are only computed on demand.
+ *
+ * @author Adrodoc55
+ */
+public class MappedFastaReader implements FastaReader {
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private static final byte HEADER_PREFIX = '>';
+  private static final byte COMMENT_PREFIX = ';';
+  private static final byte LF = '\n';
+  private static final byte CR = '\r';
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] chunks;
+  private final long size;
+
+  private long position;
+  private long rangeEnd;
+  private long headerOffset = -1;
+  private long headerEnd;
+  private long sequenceOffset;
+  private long endOffset = -1;
+  private boolean sequenceRead;
+
+  private final LineDecoder decoder;
+  private byte[] buffer = new byte[256];
+
+  private long lineCountOffset;
+  private int lineCountNumber = 1;
+
+  public MappedFastaReader(Path path) throws IOException {
+    this(path, Charset.defaultCharset());
+  }
+
+  /**
+   * @param path the FASTA file to read
+   * @param charset the {@link Charset} used to decode lines that are not plain ASCII
+   * @throws IOException
+   */
+  public MappedFastaReader(Path path, Charset charset) throws IOException {
+    decoder = new LineDecoder(charset);
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      int chunkCount = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+      chunks = new MappedByteBuffer[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        long offset = i * CHUNK_SIZE;
+        chunks[i] = channel.map(MapMode.READ_ONLY, offset, Math.min(CHUNK_SIZE, size - offset));
+      }
+      rangeEnd = size;
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Restricts this reader to the bytes from {@code start} (inclusive) to {@code end} (exclusive).
+   * {@code start} must be the beginning of a line. Line numbers are still counted from the
+   * beginning of the file.
+   *
+   * @param start the first offset to read
+   * @param end the end offset or -1 for the end of the file
+   */
+  public void setRange(long start, long end) {
+    rangeEnd = end < 0 ? size : Math.min(end, size);
+    position = start;
+    headerOffset = -1;
+  }
+
+  @Override
+  public void seek(long offset) {
+    position = offset;
+    headerOffset = -1;
+  }
+
+  @Override
+  public boolean nextRecord() {
+    skipSequence();
+    while (position < rangeEnd) {
+      long lineEnd = findLineEnd(position);
+      if (get(position) == HEADER_PREFIX) {
+        headerOffset = position;
+        headerEnd = lineEnd;
+        position = skipLineTerminator(lineEnd);
+        sequenceOffset = position;
+        endOffset = -1;
+        sequenceRead = false;
+        return true;
+      }
+      position = skipLineTerminator(lineEnd);
+    }
+    headerOffset = -1;
+    return false;
+  }
+
+  @Override
+  public String getHeader() {
+    checkRecord();
+    return decode(headerOffset, headerEnd);
+  }
+
+  @Override
+  public long getHeaderOffset() {
+    checkRecord();
+    return headerOffset;
+  }
+
+  @Override
+  public long getSequenceOffset() {
+    checkRecord();
+    return sequenceOffset;
+  }
+
+  @Override
+  public long getEndOffset() {
+    checkRecord();
+    skipSequence();
+    return endOffset;
+  }
+
+  @Override
+  public void readSequence(StringBuilder sequence, int maxLength) {
+    checkRecord();
+    if (sequenceRead || endOffset >= 0) {
+      throw new IllegalStateException("The sequence of the current record was already consumed");
+    }
+    sequenceRead = true;
+    decoder.resetInvalidResidue();
+    int limit = sequence.length() + Math.min(maxLength, Integer.MAX_VALUE - sequence.length());
+    while (position < rangeEnd && get(position) != HEADER_PREFIX) {
+      if (sequence.length() >= limit || decoder.getInvalidResidueIndex() >= 0) {
+        return;
+      }
+      long lineEnd = findLineEnd(position);
+      if (get(position) != COMMENT_PREFIX) {
+        appendTrimmed(position, lineEnd, limit - sequence.length(), sequence);
+      }
+      position = skipLineTerminator(lineEnd);
+    }
+    endOffset = position;
+  }
+
+  @Override
+  public int readSequence(PackedProtein sequence, int skip, int end) {
+    checkRecord();
+    if (sequenceRead || endOffset >= 0) {
+      throw new IllegalStateException("The sequence of the current record was already consumed");
+    }
+    sequenceRead = true;
+    decoder.resetInvalidResidue();
+    int initialLength = sequence.length();
+    int skipped = 0;
+    boolean skipping = skip > 0 && !decoder.isNormalizeResidues();
+    while (position < rangeEnd && get(position) != HEADER_PREFIX) {
+      int limit = initialLength
+          + Math.min(Math.max(0, end - skipped), Integer.MAX_VALUE - initialLength);
+      if (sequence.length() >= limit || decoder.getInvalidResidueIndex() >= 0) {
+        return skipped;
+      }
+      long lineEnd = findLineEnd(position);
+      if (get(position) != COMMENT_PREFIX) {
+        long start = position;
+        long stop = lineEnd;
+        int count = 0;
+        if (skipping) {
+          while (start < stop && (get(start) & 0xff) <= ' ') {
+            start++;
+          }
+          while (start < stop && (get(stop - 1) & 0xff) <= ' ') {
+            stop--;
+          }
+          count = isAscii(start, stop) ? (int) Math.min(stop - start, skip - skipped) : 0;
+          skipped += count;
+          start += count;
+          skipping = start == stop;
+          limit = initialLength + Math.max(0, end - skipped);
+        }
+        if (count > 0) {
+          // The rest of a partially skipped line must not be trimmed again
+          int length = copy(start, Math.min(stop, start + limit - sequence.length()));
+          decoder.appendAscii(buffer, 0, length, sequence);
+        } else if (start < stop) {
+          appendTrimmed(start, stop, limit - sequence.length(), sequence);
+        }
+      }
+      position = skipLineTerminator(lineEnd);
+    }
+    endOffset = position;
+    return skipped;
+  }
+
+  private boolean isAscii(long start, long end) {
+    for (long pos = start; pos < end; pos++) {
+      if (get(pos) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void skipSequence() {
+    if (headerOffset < 0 || endOffset >= 0) {
+      return;
+    }
+    while (position < rangeEnd && get(position) != HEADER_PREFIX) {
+      position = skipLineTerminator(findLineEnd(position));
+    }
+    endOffset = position;
+  }
+
+  @Override
+  public void setNormalizeSequences(boolean normalize) {
+    decoder.setNormalizeResidues(normalize);
+  }
+
+  @Override
+  public int getInvalidResidueIndex() {
+    return decoder.getInvalidResidueIndex();
+  }
+
+  @Override
+  public char getInvalidResidue() {
+    return decoder.getInvalidResidue();
+  }
+
+  @Override
+  public int getHeaderLineNumber() {
+    return getLineNumber(getHeaderOffset());
+  }
+
+  /**
+   * Computes the (1 based) number of the line containing {@code offset}. The computation continues
+   * from the last requested offset, so requesting ascending offsets scans the file only once.
+   *
+   * @param offset
+   * @return the line number
+   */
+  public int getLineNumber(long offset) {
+    if (offset < lineCountOffset) {
+      lineCountOffset = 0;
+      lineCountNumber = 1;
+    }
+    long pos = lineCountOffset;
+    while (pos < offset) {
+      MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      long chunkOffset = pos & ~CHUNK_MASK;
+      int limit = (int) Math.min(chunk.limit(), offset - chunkOffset);
+      for (int i = (int) (pos & CHUNK_MASK); i < limit; i++) {
+        byte b = chunk.get(i);
+        if (b == LF || (b == CR && !isLf(chunkOffset + i + 1))) {
+          lineCountNumber++;
+        }
+      }
+      pos = chunkOffset + limit;
+    }
+    lineCountOffset = offset;
+    return lineCountNumber;
+  }
+
+  private boolean isLf(long pos) {
+    return pos < size && get(pos) == LF;
+  }
+
+  private void checkRecord() {
+    if (headerOffset < 0) {
+      throw new IllegalStateException("There is no current record");
+    }
+  }
+
+  private byte get(long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+  }
+
+  private long findLineEnd(long from) {
+    long pos = from;
+    while (pos < rangeEnd) {
+      MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      long chunkOffset = pos & ~CHUNK_MASK;
+      int limit = (int) Math.min(chunk.limit(), rangeEnd - chunkOffset);
+      for (int i = (int) (pos & CHUNK_MASK); i < limit; i++) {
+        byte b = chunk.get(i);
+        if (b == LF || b == CR) {
+          return chunkOffset + i;
+        }
+      }
+      pos = chunkOffset + limit;
+    }
+    return rangeEnd;
+  }
+
+  private long skipLineTerminator(long lineEnd) {
+    if (lineEnd >= rangeEnd) {
+      return rangeEnd;
+    }
+    if (get(lineEnd) == CR && lineEnd + 1 < rangeEnd && get(lineEnd + 1) == LF) {
+      return lineEnd + 2;
+    }
+    return lineEnd + 1;
+  }
+
+  /**
+   * Appends the line from {@code start} to {@code end}, trimmed like {@link String#trim()}. The
+   * line is trimmed before it is copied, so only the characters that are appended are copied.
+   */
+  private void appendTrimmed(long start, long end, int maxChars, StringBuilder sb) {
+    while (start < end && (get(start) & 0xff) <= ' ') {
+      start++;
+    }
+    while (start < end && (get(end - 1) & 0xff) <= ' ') {
+      end--;
+    }
+    if (decoder.isNormalizeResidues()) {
+      int length = copy(start, end);
+      decoder.appendTrimmed(buffer, 0, length, maxChars, sb);
+      return;
+    }
+    int length = copy(start, Math.min(end, start + maxChars));
+    if (!decoder.appendAscii(buffer, 0, length, sb)) {
+      length = copy(start, end);
+      decoder.appendTrimmed(buffer, 0, length, Integer.MAX_VALUE, sb);
+    }
+  }
+
+  /**
+   * Like {@link #appendTrimmed(long, long, int, StringBuilder)}, but packs the line.
+   */
+  private void appendTrimmed(long start, long end, int maxChars, PackedProtein protein) {
+    while (start < end && (get(start) & 0xff) <= ' ') {
+      start++;
+    }
+    while (start < end && (get(end - 1) & 0xff) <= ' ') {
+      end--;
+    }
+    if (decoder.isNormalizeResidues()) {
+      int length = copy(start, end);
+      decoder.appendTrimmed(buffer, 0, length, maxChars, protein);
+      return;
+    }
+    int length = copy(start, Math.min(end, start + maxChars));
+    if (!decoder.appendAscii(buffer, 0, length, protein)) {
+      length = copy(start, end);
+      decoder.appendTrimmed(buffer, 0, length, Integer.MAX_VALUE, protein);
+    }
+  }
+
+  private String decode(long start, long end) {
+    int length = copy(start, end);
+    return decoder.decode(buffer, 0, length);
+  }
+
+  /**
+   * Copies the bytes from {@code start} to {@code end} into {@link #buffer}.
+   *
+   * @return the number of bytes copied
+   */
+  private int copy(long start, long end) {
+    int length = (int) (end - start);
+    if (buffer.length < length) {
+      buffer = new byte[Math.max(length, 2 * buffer.length)];
+    }
+    int copied = 0;
+    while (copied < length) {
+      long pos = start + copied;
+      MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      int index = (int) (pos & CHUNK_MASK);
+      int count = Math.min(length - copied, chunk.limit() - index);
+      chunk.position(index);
+      chunk.get(buffer, copied, count);
+      copied += count;
+    }
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.util.Arrays;
+
+/**
+ * Normalizes the residues of sequence lines: letters are upper-cased, whitespace is removed and
+ * every other character except {@code '*'} and {@code '-'} is rejected. Each byte is looked up in a
+ * table that maps it to its residue, to nothing for whitespace or to a marker for invalid bytes.
+ *
+ * @author Adrodoc55
+ */
+final class ResidueNormalizer {
+  private static final byte SKIP = 0;
+  private static final byte INVALID = -1;
+  private static final byte[] RESIDUES = new byte[256];
+
+  static {
+    Arrays.fill(RESIDUES, INVALID);
+    for (char c = 'A'; c <= 'Z'; c++) {
+      RESIDUES[c] = (byte) c;
+      RESIDUES[Character.toLowerCase(c)] = (byte) c;
+    }
+    RESIDUES['*'] = '*';
+    RESIDUES['-'] = '-';
+    for (char c : " \t\n\u000B\f\r".toCharArray()) {
+      RESIDUES[c] = SKIP;
+    }
+  }
+
+  private byte[] residues = new byte[256];
+  private int length;
+
+  /**
+   * Normalizes the specified bytes, stopping at the first byte that is neither a residue nor
+   * whitespace. The result can be read using {@link #getResidues()} and {@link #length()}.
+   *
+   * @return the number of bytes that were normalized, less than {@code length} if the byte at
+   *         {@code offset} plus the result is invalid
+   */
+  int normalize(byte[] bytes, int offset, int length) {
+    if (residues.length < length) {
+      residues = new byte[Math.max(length, 2 * residues.length)];
+    }
+    int count = 0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      byte residue = RESIDUES[bytes[i] & 0xff];
+      if (residue == INVALID) {
+        this.length = count;
+        return i - offset;
+      } else if (residue != SKIP) {
+        residues[count++] = residue;
+      }
+    }
+    this.length = count;
+    return length;
+  }
+
+  /**
+   * @return the residues of the last normalization, only valid up to {@link #length()}
+   */
+  byte[] getResidues() {
+    return residues;
+  }
+
+  /**
+   * @return the number of residues of the last normalization
+   */
+  int length() {
+    return length;
+  }
+}
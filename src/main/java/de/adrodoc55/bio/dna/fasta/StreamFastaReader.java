@@ -0,0 +1,346 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.fasta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * A {@link FastaReader} for inputs that can only be read sequentially, such as decompressed
+ * streams. The input is scanned byte by byte in a reusable buffer that only grows if a single line
+ * does not fit into it.
+ *
+ * @author Adrodoc55
+ */
+public class StreamFastaReader implements FastaReader {
+  private static final int HEADER_PREFIX = '>';
+  private static final int COMMENT_PREFIX = ';';
+  private static final byte LF = '\n';
+  private static final byte CR = '\r';
+
+  private final InputStream in;
+  private final LineDecoder decoder;
+
+  private byte[] buffer = new byte[1 << 16];
+  private int start;
+  private int limit;
+  private long bufferOffset;
+  private boolean eof;
+  private int lineNumber = 1;
+
+  private String header;
+  private long headerOffset = -1;
+  private int headerLineNumber;
+  private long sequenceOffset;
+  private long endOffset = -1;
+  private boolean sequenceRead;
+
+  public StreamFastaReader(InputStream in) {
+    this(in, Charset.defaultCharset());
+  }
+
+  /**
+   * @param in the FASTA input
+   * @param charset the {@link Charset} used to decode lines that are not plain ASCII
+   */
+  public StreamFastaReader(InputStream in, Charset charset) {
+    this.in = in;
+    decoder = new LineDecoder(charset);
+  }
+
+  @Override
+  public void seek(long offset) throws IOException {
+    if (offset < position()) {
+      throw new IOException("Can not seek backwards in sequential input");
+    }
+    headerOffset = -1;
+    while (position() < offset && peek() >= 0) {
+      consumeLine(lineLength());
+    }
+    if (position() != offset) {
+      throw new IOException("Offset " + offset + " is not the beginning of a line");
+    }
+  }
+
+  @Override
+  public boolean nextRecord() throws IOException {
+    skipSequence();
+    int first;
+    while ((first = peek()) >= 0) {
+      int length = lineLength();
+      if (first == HEADER_PREFIX) {
+        headerOffset = position();
+        headerLineNumber = lineNumber;
+        header = decoder.decode(buffer, start, length);
+        consumeLine(length);
+        sequenceOffset = position();
+        endOffset = -1;
+        sequenceRead = false;
+        return true;
+      }
+      consumeLine(length);
+    }
+    headerOffset = -1;
+    header = null;
+    return false;
+  }
+
+  @Override
+  public String getHeader() {
+    checkRecord();
+    return header;
+  }
+
+  @Override
+  public long getHeaderOffset() {
+    checkRecord();
+    return headerOffset;
+  }
+
+  @Override
+  public long getSequenceOffset() {
+    checkRecord();
+    return sequenceOffset;
+  }
+
+  @Override
+  public long getEndOffset() throws IOException {
+    checkRecord();
+    skipSequence();
+    return endOffset;
+  }
+
+  @Override
+  public void readSequence(StringBuilder sequence, int maxLength) throws IOException {
+    checkRecord();
+    if (sequenceRead || endOffset >= 0) {
+      throw new IllegalStateException("The sequence of the current record was already consumed");
+    }
+    sequenceRead = true;
+    decoder.resetInvalidResidue();
+    int limit = sequence.length() + Math.min(maxLength, Integer.MAX_VALUE - sequence.length());
+    int first;
+    while ((first = peek()) >= 0 && first != HEADER_PREFIX) {
+      if (sequence.length() >= limit || decoder.getInvalidResidueIndex() >= 0) {
+        return;
+      }
+      int length = lineLength();
+      if (first != COMMENT_PREFIX) {
+        decoder.appendTrimmed(buffer, start, length, limit - sequence.length(), sequence);
+      }
+      consumeLine(length);
+    }
+    endOffset = position();
+  }
+
+  @Override
+  public int readSequence(PackedProtein sequence, int skip, int end) throws IOException {
+    checkRecord();
+    if (sequenceRead || endOffset >= 0) {
+      throw new IllegalStateException("The sequence of the current record was already consumed");
+    }
+    sequenceRead = true;
+    decoder.resetInvalidResidue();
+    int initialLength = sequence.length();
+    int skipped = 0;
+    boolean skipping = skip > 0 && !decoder.isNormalizeResidues();
+    int first;
+    while ((first = peek()) >= 0 && first != HEADER_PREFIX) {
+      int limit = initialLength
+          + Math.min(Math.max(0, end - skipped), Integer.MAX_VALUE - initialLength);
+      if (sequence.length() >= limit || decoder.getInvalidResidueIndex() >= 0) {
+        return skipped;
+      }
+      int length = lineLength();
+      if (first != COMMENT_PREFIX) {
+        int from = start;
+        int to = start + length;
+        int count = 0;
+        if (skipping) {
+          while (from < to && (buffer[from] & 0xff) <= ' ') {
+            from++;
+          }
+          while (from < to && (buffer[to - 1] & 0xff) <= ' ') {
+            to--;
+          }
+          count = LineDecoder.isAscii(buffer, from, to - from)
+              ? Math.min(to - from, skip - skipped)
+              : 0;
+          skipped += count;
+          from += count;
+          skipping = from == to;
+          limit = initialLength + Math.max(0, end - skipped);
+        }
+        if (count > 0) {
+          // The rest of a partially skipped line must not be trimmed again
+          decoder.appendAscii(buffer, from, Math.min(to - from, limit - sequence.length()),
+              sequence);
+        } else if (from < to) {
+          decoder.appendTrimmed(buffer, from, to - from, limit - sequence.length(), sequence);
+        }
+      }
+      consumeLine(length);
+    }
+    endOffset = position();
+    return skipped;
+  }
+
+  private void skipSequence() throws IOException {
+    if (headerOffset < 0 || endOffset >= 0) {
+      return;
+    }
+    int first;
+    while ((first = peek()) >= 0 && first != HEADER_PREFIX) {
+      consumeLine(lineLength());
+    }
+    endOffset = position();
+  }
+
+  @Override
+  public void setNormalizeSequences(boolean normalize) {
+    decoder.setNormalizeResidues(normalize);
+  }
+
+  @Override
+  public int getInvalidResidueIndex() {
+    return decoder.getInvalidResidueIndex();
+  }
+
+  @Override
+  public char getInvalidResidue() {
+    return decoder.getInvalidResidue();
+  }
+
+  @Override
+  public int getHeaderLineNumber() {
+    checkRecord();
+    return headerLineNumber;
+  }
+
+  private void checkRecord() {
+    if (headerOffset < 0) {
+      throw new IllegalStateException("There is no current record");
+    }
+  }
+
+  private long position() {
+    return bufferOffset + start;
+  }
+
+  /**
+   * @return the next byte without consuming it or -1 at the end of the input
+   */
+  private int peek() throws IOException {
+    if (start < limit || fill()) {
+      return buffer[start] & 0xff;
+    }
+    return -1;
+  }
+
+  /**
+   * Makes sure that the entire line at the current position is in the buffer.
+   *
+   * @return the length of the line excluding the line terminator
+   */
+  private int lineLength() throws IOException {
+    int length = 0;
+    while (true) {
+      for (int i = start + length; i < limit; i++) {
+        byte b = buffer[i];
+        if (b == LF || b == CR) {
+          return i - start;
+        }
+      }
+      length = limit - start;
+      if (!fill()) {
+        return length;
+      }
+    }
+  }
+
+  private void consumeLine(int length) throws IOException {
+    start += length;
+    if (start < limit || fill()) {
+      lineNumber++;
+      byte terminator = buffer[start++];
+      if (terminator == CR && (start < limit || fill()) && buffer[start] == LF) {
+        start++;
+      }
+    }
+  }
+
+  /**
+   * Reads more bytes into the buffer, discarding everything before {@link #start}.
+   *
+   * @return {@code false} if the end of the input was reached
+   */
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (start > 0) {
+      System.arraycopy(buffer, start, buffer, 0, limit - start);
+      bufferOffset += start;
+      limit -= start;
+      start = 0;
+    }
+    if (limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+    }
+    int read = in.read(buffer, limit, buffer.length - limit);
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
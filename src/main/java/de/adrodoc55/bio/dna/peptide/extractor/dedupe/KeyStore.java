@@ -0,0 +1,343 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.dedupe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * Keys appended to direct buffers, so no object is kept per key. Each key is encoded with the 5 bit
+ * codes of {@link PackedProtein} (or as UTF-16 if it contains other characters) behind an
+ * {@code int} header holding its number of characters. A stored key is addressed by a
+ * {@code long} offset consisting of the index of its chunk and its position in the chunk.
+ * <p>
+ * A store also holds a current key, which is {@link #encode(CharSequence) encoded} or
+ * {@link #load(long) loaded} into a reusable array and can then be stored or compared
+ * with stored keys. This class is not thread safe.
+ *
+ * @author Adrodoc55
+ */
+final class KeyStore {
+  static final int CHUNK_BITS = 26;
+  private static final int MIN_CHUNK_BITS = 20;
+  private static final int RAW = 1 << 31;
+  /**
+   * The lowest bit of each of the 8 codes in 5 bytes.
+   */
+  private static final long FIRST_BITS = 0x842108421L;
+
+  private final int maxChunks;
+  private ByteBuffer[] chunks;
+  private ByteBuffer chunk;
+  private long memory;
+
+  private byte[] key = new byte[64];
+  private int header;
+  private int length;
+
+  /**
+   * @param maxChunks the maximum number of chunks
+   */
+  KeyStore(int maxChunks) {
+    this(new ByteBuffer[0], maxChunks);
+  }
+
+  /**
+   * @param chunks chunks with keys up to their position, usually mapped from a file
+   * @param maxChunks the maximum number of chunks
+   */
+  KeyStore(ByteBuffer[] chunks, int maxChunks) {
+    this.maxChunks = maxChunks;
+    this.chunks = chunks;
+    chunk = chunks.length > 0 ? chunks[chunks.length - 1] : null;
+    for (ByteBuffer chunk : chunks) {
+      memory += chunk.capacity();
+    }
+  }
+
+  /**
+   * @return the chunks, each of which contains keys up to its position
+   */
+  ByteBuffer[] getChunks() {
+    return chunks;
+  }
+
+  /**
+   * @return the number of bytes of direct or mapped memory used by the chunks
+   */
+  long getMemoryUsage() {
+    return memory;
+  }
+
+  /**
+   * @return the header of the current key
+   */
+  int getHeader() {
+    return header;
+  }
+
+  /**
+   * @return the encoded current key, only valid up to {@link #getLength()}
+   */
+  byte[] getKey() {
+    return key;
+  }
+
+  /**
+   * @return the number of bytes of the encoded current key
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Encodes {@code s} into the current key, using 5 bits per character if possible.
+   */
+  void encode(CharSequence s) {
+    int length = s.length();
+    if (key.length < 2 * length) {
+      key = new byte[Math.max(2 * length, 2 * key.length)];
+    }
+    long bits = 0;
+    int bitCount = 0;
+    int position = 0;
+    for (int i = 0; i < length; i++) {
+      int code = PackedProtein.getCode(s.charAt(i));
+      if (code < 0) {
+        encodeRaw(s);
+        return;
+      }
+      bits |= (long) code << bitCount;
+      bitCount += 5;
+      if (bitCount >= Byte.SIZE) {
+        key[position++] = (byte) bits;
+        bits >>>= Byte.SIZE;
+        bitCount -= Byte.SIZE;
+      }
+    }
+    if (bitCount > 0) {
+      key[position++] = (byte) bits;
+    }
+    header = length;
+    this.length = position;
+  }
+
+  private void encodeRaw(CharSequence s) {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      key[2 * i] = (byte) (c >>> Byte.SIZE);
+      key[2 * i + 1] = (byte) c;
+    }
+    header = length | RAW;
+    this.length = 2 * length;
+  }
+
+  /**
+   * Copies the key stored at {@code offset} into the current key.
+   */
+  void load(long offset) {
+    ByteBuffer chunk = getChunk(offset);
+    int position = getPosition(offset);
+    header = chunk.getInt(position);
+    length = getEncodedLength(header);
+    if (key.length < length) {
+      key = new byte[Math.max(length, 2 * key.length)];
+    }
+    position += Integer.BYTES;
+    for (int i = 0; i < length; i++) {
+      key[i] = chunk.get(position + i);
+    }
+  }
+
+  /**
+   * Appends the current key to the last chunk, allocating a new chunk if it does not fit.
+   *
+   * @return the offset of the key
+   * @throws IllegalStateException if the maximum number of chunks is exceeded
+   */
+  long store() {
+    int entrySize = Integer.BYTES + length;
+    if (chunk == null || chunk.remaining() < entrySize) {
+      if (chunks.length == maxChunks) {
+        throw new IllegalStateException("Too many keys");
+      }
+      int chunkBits = Math.min(MIN_CHUNK_BITS + chunks.length, CHUNK_BITS);
+      chunk = ByteBuffer.allocateDirect(Math.max(entrySize, 1 << chunkBits));
+      chunks = Arrays.copyOf(chunks, chunks.length + 1);
+      chunks[chunks.length - 1] = chunk;
+      memory += chunk.capacity();
+    }
+    long offset = (long) (chunks.length - 1) << CHUNK_BITS | chunk.position();
+    chunk.putInt(header);
+    chunk.put(key, 0, length);
+    return offset;
+  }
+
+  /**
+   * @param offset the offset of a key in this store
+   * @param other the store whose current key to compare
+   * @return whether the key at {@code offset} is the current key of {@code other}
+   */
+  boolean matches(long offset, KeyStore other) {
+    ByteBuffer chunk = getChunk(offset);
+    int position = getPosition(offset);
+    if (chunk.getInt(position) != other.header) {
+      return false;
+    }
+    position += Integer.BYTES;
+    for (int i = 0; i < other.length; i++) {
+      if (chunk.get(position + i) != other.key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Counts the characters in which the key at {@code offset} differs from {@code s}, which must
+   * have the same number of characters and must be the current key. Keys that are both encoded
+   * with 5 bit codes are compared 8 codes at a time.
+   *
+   * @param offset the offset of a key in this store
+   * @param s the characters of the current key
+   * @param max the number of differences after which counting stops
+   * @return the number of differences or a number greater than {@code max} once it is exceeded
+   */
+  int countDifferences(long offset, CharSequence s, int max) {
+    ByteBuffer chunk = getChunk(offset);
+    int position = getPosition(offset);
+    int storedHeader = chunk.getInt(position);
+    position += Integer.BYTES;
+    if (storedHeader != header || (header & RAW) != 0) {
+      return countCharDifferences(chunk, position, storedHeader, s, max);
+    }
+    int differences = 0;
+    for (int i = 0; i < length; i += 5) {
+      int n = Math.min(5, length - i);
+      long bits;
+      if (position + i + Long.BYTES <= chunk.limit()) {
+        bits = Long.reverseBytes(chunk.getLong(position + i)) & (1L << n * Byte.SIZE) - 1;
+      } else {
+        bits = 0;
+        for (int k = 0; k < n; k++) {
+          bits |= (chunk.get(position + i + k) & 0xffL) << k * Byte.SIZE;
+        }
+      }
+      for (int k = 0; k < n; k++) {
+        bits ^= (key[i + k] & 0xffL) << k * Byte.SIZE;
+      }
+      bits |= bits >>> 1 | bits >>> 2 | bits >>> 3 | bits >>> 4;
+      differences += Long.bitCount(bits & FIRST_BITS);
+      if (differences > max) {
+        break;
+      }
+    }
+    return differences;
+  }
+
+  private static int countCharDifferences(ByteBuffer chunk, int position, int header,
+      CharSequence s, int max) {
+    boolean raw = (header & RAW) != 0;
+    int differences = 0;
+    for (int i = 0, count = s.length(); i < count; i++) {
+      char c = raw ? getRawChar(chunk, position, i) : getChar(chunk, position, i);
+      if (c != s.charAt(i) && ++differences > max) {
+        break;
+      }
+    }
+    return differences;
+  }
+
+  /**
+   * @return the key stored at {@code offset}
+   */
+  String getString(long offset) {
+    ByteBuffer chunk = getChunk(offset);
+    int position = getPosition(offset);
+    int header = chunk.getInt(position);
+    position += Integer.BYTES;
+    boolean raw = (header & RAW) != 0;
+    char[] result = new char[header & ~RAW];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = raw ? getRawChar(chunk, position, i) : getChar(chunk, position, i);
+    }
+    return new String(result);
+  }
+
+  /**
+   * @return the character {@code index} of the 5 bit encoded key starting at {@code position}
+   */
+  private static char getChar(ByteBuffer chunk, int position, int index) {
+    int bit = 5 * index;
+    int p = position + bit / Byte.SIZE;
+    int shift = bit % Byte.SIZE;
+    int bits = chunk.get(p) & 0xff;
+    if (shift > Byte.SIZE - 5) {
+      bits |= (chunk.get(p + 1) & 0xff) << Byte.SIZE;
+    }
+    return PackedProtein.getChar(bits >>> shift & (1 << 5) - 1);
+  }
+
+  private static char getRawChar(ByteBuffer chunk, int position, int index) {
+    return (char) ((chunk.get(position + 2 * index) & 0xff) << Byte.SIZE
+        | chunk.get(position + 2 * index + 1) & 0xff);
+  }
+
+  /**
+   * @return the number of bytes of a key with {@code header}
+   */
+  static int getEncodedLength(int header) {
+    int count = header & ~RAW;
+    return (header & RAW) != 0 ? 2 * count : (5 * count + Byte.SIZE - 1) / Byte.SIZE;
+  }
+
+  private ByteBuffer getChunk(long offset) {
+    return chunks[(int) (offset >>> CHUNK_BITS)];
+  }
+
+  private static int getPosition(long offset) {
+    return (int) (offset & (1 << CHUNK_BITS) - 1);
+  }
+}
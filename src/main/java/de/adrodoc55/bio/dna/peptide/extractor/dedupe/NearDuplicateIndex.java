@@ -0,0 +1,251 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.dedupe;
+
+import java.util.Arrays;
+
+/**
+ * Finds peptides that differ from a previously added peptide of the same length in at most
+ * {@code distance} residues (their Hamming distance).
+ * <p>
+ * If two peptides differ in at most {@code distance} residues and are cut into
+ * {@code distance + 1} segments, at least one segment is identical (pigeonhole principle). So each
+ * added peptide is indexed by the hash of each of its segments and a lookup only compares the
+ * peptides sharing a segment, instead of all peptides of the same length. The peptides are packed
+ * into the direct buffers of a {@link KeyStore} and addressed by {@code long} offsets, and the
+ * index consists of primitive arrays, so no object is kept per peptide.
+ * <p>
+ * Peptides of at most {@code distance} residues can not be cut into {@code distance + 1}
+ * non-empty segments, but they are near duplicates of every other peptide of the same length. So
+ * they are not indexed, instead the first peptide of each such length is kept.
+ *
+ * @author Adrodoc55
+ */
+public final class NearDuplicateIndex {
+  private final int distance;
+  private final int segments;
+
+  private final KeyStore peptides = new KeyStore(Integer.MAX_VALUE);
+  private long[] offsets = new long[1 << 10];
+  private int[] lengths = new int[1 << 10];
+  private int count;
+  /**
+   * The id of the first peptide of each length up to {@link #distance} or -1.
+   */
+  private final int[] shortPeptides;
+
+  /**
+   * Entry {@code id * segments + segment} links to the previous entry with the same segment hash.
+   */
+  private int[] next = new int[1 << 10];
+  private long[] hashes = new long[1 << 10];
+  /**
+   * The last entry plus one for each hash in {@link #hashes} or 0 if the slot is empty.
+   */
+  private int[] heads = new int[1 << 10];
+  private int hashCount;
+
+  private long collapsedCount;
+
+  /**
+   * @param distance the maximum number of differing residues of a near duplicate, 1 or 2
+   */
+  public NearDuplicateIndex(int distance) {
+    if (distance < 1 || distance > 2) {
+      throw new IllegalArgumentException("The distance must be 1 or 2");
+    }
+    this.distance = distance;
+    segments = distance + 1;
+    shortPeptides = new int[distance + 1];
+    Arrays.fill(shortPeptides, -1);
+  }
+
+  public int getDistance() {
+    return distance;
+  }
+
+  /**
+   * Looks up a near duplicate of {@code peptide}. If there is none, {@code peptide} is added.
+   *
+   * @param peptide the peptide
+   * @return the id of an added peptide that differs from {@code peptide} in at most
+   *         {@link #getDistance() distance} residues or -1 if {@code peptide} was added
+   */
+  public int findOrAdd(CharSequence peptide) {
+    int length = peptide.length();
+    if (length <= distance) {
+      int id = shortPeptides[length];
+      if (id >= 0) {
+        collapsedCount++;
+        return id;
+      }
+      peptides.encode(peptide);
+      shortPeptides[length] = store(length);
+      return -1;
+    }
+    peptides.encode(peptide);
+    for (int segment = 0; segment < segments; segment++) {
+      long hash = hashSegment(peptide, segment);
+      for (int entry = getHead(hash) - 1; entry >= 0; entry = next[entry]) {
+        int id = entry / segments;
+        if (lengths[id] == length && isNearDuplicate(id, peptide)) {
+          collapsedCount++;
+          return id;
+        }
+      }
+    }
+    add(peptide);
+    return -1;
+  }
+
+  /**
+   * @return the added peptide with the specified id
+   */
+  public String getPeptide(int id) {
+    return peptides.getString(offsets[id]);
+  }
+
+  /**
+   * @return the number of added peptides
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the number of lookups that found a near duplicate
+   */
+  public long getCollapsedCount() {
+    return collapsedCount;
+  }
+
+  private boolean isNearDuplicate(int id, CharSequence peptide) {
+    return peptides.countDifferences(offsets[id], peptide, distance) <= distance;
+  }
+
+  /**
+   * Stores the current key of {@link #peptides} without indexing it.
+   *
+   * @return the id of the peptide
+   */
+  private int store(int length) {
+    if (count == offsets.length) {
+      offsets = Arrays.copyOf(offsets, 2 * count);
+      lengths = Arrays.copyOf(lengths, 2 * count);
+    }
+    int id = count++;
+    offsets[id] = peptides.store();
+    lengths[id] = length;
+    return id;
+  }
+
+  /**
+   * Stores and indexes {@code peptide}, which must be the current key of {@link #peptides}.
+   */
+  private void add(CharSequence peptide) {
+    int id = store(peptide.length());
+    if (next.length < (id + 1) * segments) {
+      next = Arrays.copyOf(next, Math.max((id + 1) * segments, 2 * next.length));
+    }
+    for (int segment = 0; segment < segments; segment++) {
+      int entry = id * segments + segment;
+      long hash = hashSegment(peptide, segment);
+      int slot = findSlot(hash);
+      if (heads[slot] == 0) {
+        hashes[slot] = hash;
+        hashCount++;
+      }
+      next[entry] = heads[slot] - 1;
+      heads[slot] = entry + 1;
+      if (hashCount > hashes.length / 2) {
+        growTable();
+      }
+    }
+  }
+
+  private int getHead(long hash) {
+    return heads[findSlot(hash)];
+  }
+
+  /**
+   * @return the slot of {@code hash} or the empty slot where it belongs
+   */
+  private int findSlot(long hash) {
+    int mask = hashes.length - 1;
+    for (int slot = (int) hash & mask;; slot = slot + 1 & mask) {
+      if (heads[slot] == 0 || hashes[slot] == hash) {
+        return slot;
+      }
+    }
+  }
+
+  private void growTable() {
+    long[] oldHashes = hashes;
+    int[] oldHeads = heads;
+    hashes = new long[2 * oldHashes.length];
+    heads = new int[2 * oldHeads.length];
+    for (int i = 0; i < oldHashes.length; i++) {
+      if (oldHeads[i] != 0) {
+        int slot = findSlot(oldHashes[i]);
+        hashes[slot] = oldHashes[i];
+        heads[slot] = oldHeads[i];
+      }
+    }
+  }
+
+  /**
+   * Hashes the length of {@code peptide}, the index of the segment and its residues.
+   */
+  private long hashSegment(CharSequence peptide, int segment) {
+    int length = peptide.length();
+    int begin = segment * length / segments;
+    int end = (segment + 1) * length / segments;
+    long hash = 0xcbf29ce484222325L ^ ((long) length << 8 | segment);
+    for (int i = begin; i < end; i++) {
+      hash = (hash ^ peptide.charAt(i)) * 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
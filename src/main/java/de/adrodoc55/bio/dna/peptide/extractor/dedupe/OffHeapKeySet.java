@@ -0,0 +1,371 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.dedupe;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * A set of keys, usually unique solutions, that is stored outside of the Java heap, so no object
+ * is kept per key. Each key is encoded with the 5 bit codes of {@link PackedProtein} (or as UTF-16
+ * if it contains other characters) and appended to the direct buffers of a {@link KeyStore}. Unique
+ * solutions consist of a mutation type tag, the native aminoacid of deletions and the peptide, all
+ * of which have a 5 bit code.
+ * <p>
+ * The keys are referenced by an open addressing table of longs. Each slot contains the offset of
+ * its key and the upper bits of the hash of the key, so keys are only compared if these bits match.
+ * <p>
+ * A set can be {@link #save(Path) saved} to a file and {@link #open(Path, boolean) opened} again by
+ * memory mapping the file, so the keys of previous runs can be looked up without reading them into
+ * memory. A set can also be layered on top of such a set by {@link #OffHeapKeySet(OffHeapKeySet)},
+ * so the keys of the current run are kept apart from the keys of previous runs.
+ * This class is not thread safe.
+ *
+ * @author Adrodoc55
+ */
+public final class OffHeapKeySet {
+  private static final int SEGMENT_BITS = 27;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+  private static final int OFFSET_BITS = 40;
+  private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+  private static final int MAX_CHUNKS = 1 << OFFSET_BITS - KeyStore.CHUNK_BITS;
+  private static final String MAGIC = "peptide-extractor-keys";
+  private static final int VERSION = 1;
+
+  private final OffHeapKeySet base;
+  private final boolean readOnly;
+  private LongBuffer[] segments;
+  private long capacity;
+  private long size;
+
+  private final KeyStore keys;
+
+  public OffHeapKeySet() {
+    this(1 << 16);
+  }
+
+  /**
+   * @param expectedSize the number of keys that can be added before the table grows
+   */
+  public OffHeapKeySet(long expectedSize) {
+    this(null, expectedSize);
+  }
+
+  /**
+   * Creates a set that contains the keys of {@code base} and the keys added to it. Keys are only
+   * added to the new set and {@code base} is never modified, so it may be {@link #open(Path,
+   * boolean) opened} read only.
+   *
+   * @param base the set to layer the new set on top of
+   */
+  public OffHeapKeySet(OffHeapKeySet base) {
+    this(base, 1 << 16);
+  }
+
+  private OffHeapKeySet(OffHeapKeySet base, long expectedSize) {
+    this.base = base;
+    readOnly = false;
+    keys = new KeyStore(MAX_CHUNKS);
+    allocateSlots(Math.max(16, Long.highestOneBit(expectedSize * 4 / 3) << 1));
+  }
+
+  private OffHeapKeySet(LongBuffer[] segments, long capacity, long size, ByteBuffer[] chunks,
+      boolean readOnly) {
+    base = null;
+    this.readOnly = readOnly;
+    this.segments = segments;
+    this.capacity = capacity;
+    this.size = size;
+    keys = new KeyStore(chunks, MAX_CHUNKS);
+  }
+
+  /**
+   * Opens a set that was {@link #save(Path) saved} to {@code file} by mapping the file into memory.
+   * A writable set is mapped privately, so keys can be added to it, but they are only written to a
+   * file by {@link #save(Path)}. Private mappings require {@code file} to be writable. A set that
+   * is not writable only requires {@code file} to be readable, but keys can not be added to it.
+   *
+   * @param file the saved set
+   * @param writable whether keys can be added to the opened set
+   * @return the opened set
+   * @throws IOException if the file can not be read or is not a saved set
+   */
+  public static OffHeapKeySet open(Path file, boolean writable) throws IOException {
+    long capacity;
+    long size;
+    long[] chunkLengths;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a key index");
+      }
+      capacity = in.readLong();
+      size = in.readLong();
+      chunkLengths = new long[in.readInt()];
+      for (int i = 0; i < chunkLengths.length; i++) {
+        chunkLengths[i] = in.readLong();
+      }
+    }
+    MapMode mode = writable ? MapMode.PRIVATE : MapMode.READ_ONLY;
+    try (FileChannel channel =
+        writable ? FileChannel.open(file, READ, WRITE) : FileChannel.open(file, READ)) {
+      long offset = getHeaderLength(chunkLengths.length);
+      int segmentCount = (int) ((capacity + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+      LongBuffer[] segments = new LongBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long segmentSize = Math.min(capacity, SEGMENT_SIZE) * Long.BYTES;
+        segments[i] = channel.map(mode, offset, segmentSize).asLongBuffer();
+        offset += segmentSize;
+      }
+      ByteBuffer[] chunks = new ByteBuffer[chunkLengths.length];
+      for (int i = 0; i < chunks.length; i++) {
+        chunks[i] = channel.map(mode, offset, chunkLengths[i]);
+        chunks[i].position(chunks[i].limit());
+        offset += chunkLengths[i];
+      }
+      return new OffHeapKeySet(segments, capacity, size, chunks, !writable);
+    }
+  }
+
+  /**
+   * Atomically replaces {@code file} with this set. The keys of a set that this set is layered on
+   * top of are not included. This set remains usable, even if it was
+   * {@link #open(Path, boolean) opened} from {@code file}.
+   *
+   * @param file the file to write
+   * @throws IOException if the file can not be written
+   */
+  public void save(Path file) throws IOException {
+    ByteBuffer[] chunks = keys.getChunks();
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(header)) {
+      out.writeUTF(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(capacity);
+      out.writeLong(size);
+      out.writeInt(chunks.length);
+      for (ByteBuffer chunk : chunks) {
+        out.writeLong(chunk.position());
+      }
+      out.write(new byte[(int) (getHeaderLength(chunks.length) - out.size())]);
+    }
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+      writeFully(channel, ByteBuffer.wrap(header.toByteArray()));
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+      for (long i = 0; i < capacity; i++) {
+        if (!buffer.hasRemaining()) {
+          buffer.flip();
+          writeFully(channel, buffer);
+          buffer.clear();
+        }
+        buffer.putLong(getSlot(segments, i));
+      }
+      buffer.flip();
+      writeFully(channel, buffer);
+      for (ByteBuffer chunk : chunks) {
+        ByteBuffer used = chunk.duplicate();
+        used.flip();
+        writeFully(channel, used);
+      }
+      channel.force(true);
+    }
+    Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  private static long getHeaderLength(int chunkCount) {
+    long length = 2 + MAGIC.getBytes(UTF_8).length + Integer.BYTES + 2 * Long.BYTES
+        + Integer.BYTES + (long) chunkCount * Long.BYTES;
+    return (length + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * @return {@code true} if {@code key} was not yet contained
+   * @throws UnsupportedOperationException if this set was opened read only
+   */
+  public boolean add(CharSequence key) {
+    if (readOnly) {
+      throw new UnsupportedOperationException("The set was opened read only");
+    }
+    keys.encode(key);
+    long hash = hash(keys);
+    if (base != null && base.find(hash, keys) >= 0) {
+      return false;
+    }
+    long index = find(hash, keys);
+    if (index >= 0) {
+      return false;
+    }
+    long offset = keys.store();
+    setSlot(segments, ~index, hash >>> OFFSET_BITS << OFFSET_BITS | offset + 1);
+    if (++size > capacity / 4 * 3) {
+      grow();
+    }
+    return true;
+  }
+
+  public boolean contains(CharSequence key) {
+    keys.encode(key);
+    long hash = hash(keys);
+    return find(hash, keys) >= 0 || base != null && base.find(hash, keys) >= 0;
+  }
+
+  /**
+   * @return the number of keys, not including the keys of a set that this set is layered on top of
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return the number of bytes of direct or mapped memory used by the table and the keys
+   */
+  public long getMemoryUsage() {
+    return capacity * Long.BYTES + keys.getMemoryUsage();
+  }
+
+  /**
+   * The key is passed as the current key of a {@link KeyStore}, so a set can look up the key of the
+   * set that is layered on top of it.
+   *
+   * @return the index of the slot containing the current key of {@code key} or the complement of
+   *         the index of the empty slot where it belongs
+   */
+  private long find(long hash, KeyStore key) {
+    long tag = hash >>> OFFSET_BITS;
+    long mask = capacity - 1;
+    for (long index = hash & mask;; index = index + 1 & mask) {
+      long slot = getSlot(segments, index);
+      if (slot == 0) {
+        return ~index;
+      }
+      if (slot >>> OFFSET_BITS == tag && keys.matches((slot & OFFSET_MASK) - 1, key)) {
+        return index;
+      }
+    }
+  }
+
+  /**
+   * Doubles the capacity of the table. The hash of each key is recomputed from its encoding.
+   */
+  private void grow() {
+    LongBuffer[] oldSegments = segments;
+    long oldCapacity = capacity;
+    allocateSlots(2 * oldCapacity);
+    long mask = capacity - 1;
+    for (long i = 0; i < oldCapacity; i++) {
+      long slot = getSlot(oldSegments, i);
+      if (slot != 0) {
+        keys.load((slot & OFFSET_MASK) - 1);
+        long index = hash(keys) & mask;
+        while (getSlot(segments, index) != 0) {
+          index = index + 1 & mask;
+        }
+        setSlot(segments, index, slot);
+      }
+    }
+  }
+
+  private void allocateSlots(long capacity) {
+    int segmentCount = (int) ((capacity + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+    segments = new LongBuffer[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      int segmentSize = (int) Math.min(capacity, SEGMENT_SIZE);
+      segments[i] = ByteBuffer.allocateDirect(segmentSize * Long.BYTES)
+          .order(ByteOrder.nativeOrder())
+          .asLongBuffer();
+    }
+    this.capacity = capacity;
+  }
+
+  private static long getSlot(LongBuffer[] segments, long index) {
+    return segments[(int) (index >>> SEGMENT_BITS)].get((int) (index & SEGMENT_SIZE - 1));
+  }
+
+  private static void setSlot(LongBuffer[] segments, long index, long slot) {
+    segments[(int) (index >>> SEGMENT_BITS)].put((int) (index & SEGMENT_SIZE - 1), slot);
+  }
+
+  /**
+   * FNV-1a over the current key of {@code key}, finished with the avalanche step of MurmurHash3.
+   */
+  private static long hash(KeyStore key) {
+    byte[] bytes = key.getKey();
+    int length = key.getLength();
+    long hash = 0xcbf29ce484222325L ^ key.getHeader();
+    for (int i = 0; i < length; i++) {
+      hash = (hash ^ bytes[i] & 0xff) * 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.main;
+
+import static de.adrodoc55.bio.dna.peptide.extractor.main.DataStreams.readString;
+import static de.adrodoc55.bio.dna.peptide.extractor.main.DataStreams.writeString;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.adrodoc55.bio.dna.fasta.FastaSplit;
+import de.adrodoc55.bio.dna.peptide.extractor.dedupe.OffHeapKeySet;
+
+/**
+ * Periodically records the progress of a sequential extraction, so an interrupted run can be
+ * resumed with identical output.
+ * <p>
+ * A checkpoint consists of the position of the next unprocessed record (the index of the
+ * {@link FastaSplit} and the byte offset in its file), the length of the output and the length of
+ * a key log. Every unique solution that is written to the output is appended to the key log, so the
+ * log is an incremental snapshot of the dedupe state. Resuming truncates the output and the key log
+ * to the recorded lengths and reloads the unique solutions from the log. Resuming fails if either
+ * file is shorter than recorded.
+ *
+ * @author Adrodoc55
+ */
+class Checkpoint implements Closeable {
+  private static final String MAGIC = "peptide-extractor-checkpoint";
+  private static final int VERSION = 1;
+
+  /**
+   * Starts a new extraction, discarding any previous checkpoint for {@code output}.
+   */
+  static Checkpoint start(File output, List<FastaSplit> splits, long intervalSeconds)
+      throws IOException {
+    Checkpoint checkpoint = new Checkpoint(output, splits, intervalSeconds);
+    Files.deleteIfExists(checkpoint.checkpointPath);
+    checkpoint.keyLog = openKeyLog(checkpoint.keyLogPath, false);
+    return checkpoint;
+  }
+
+  /**
+   * Restores the last checkpoint for {@code output}: the output is truncated and
+   * {@code uniqueSolutions} is filled with the unique solutions written before the checkpoint.
+   *
+   * @throws IOException if there is no checkpoint or it does not match {@code splits}
+   */
+  static Checkpoint resume(File output, List<FastaSplit> splits, long intervalSeconds,
+      OffHeapKeySet uniqueSolutions) throws IOException {
+    Checkpoint checkpoint = new Checkpoint(output, splits, intervalSeconds);
+    checkpoint.load();
+    truncate(output.toPath(), checkpoint.outputLength);
+    truncate(checkpoint.keyLogPath, checkpoint.keyLogLength);
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(checkpoint.keyLogPath.toFile()), 1 << 16))) {
+      for (long count = 0; count < checkpoint.keyCount; count++) {
+        uniqueSolutions.add(readString(in));
+      }
+    }
+    checkpoint.keyLog = openKeyLog(checkpoint.keyLogPath, true);
+    return checkpoint;
+  }
+
+  private static DataOutputStream openKeyLog(Path keyLogPath, boolean append)
+      throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(keyLogPath.toFile(), append), 1 << 16));
+  }
+
+  /**
+   * Forces the content of {@code path} to the storage device, so it survives a crash of the
+   * machine and not just of this process.
+   */
+  private static void force(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+  }
+
+  private static void truncate(Path path, long length) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      if (channel.size() < length) {
+        throw new IOException("Can not resume, " + path + " is shorter than at the checkpoint");
+      }
+      channel.truncate(length);
+    }
+  }
+
+  private final File output;
+  private final List<FastaSplit> splits;
+  private final Path checkpointPath;
+  private final Path keyLogPath;
+  private final long intervalNanos;
+  private DataOutputStream keyLog;
+  private long lastSave = System.nanoTime();
+
+  private int split;
+  private long offset;
+  private long outputLength;
+  private long keyLogLength;
+  private long keyCount;
+
+  private Checkpoint(File output, List<FastaSplit> splits, long intervalSeconds) {
+    this.output = output;
+    this.splits = splits;
+    checkpointPath = output.toPath().resolveSibling(output.getName() + ".checkpoint");
+    keyLogPath = output.toPath().resolveSibling(output.getName() + ".checkpoint-keys");
+    intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+  }
+
+  /**
+   * @return the index of the split containing the next unprocessed record
+   */
+  int getSplit() {
+    return split;
+  }
+
+  /**
+   * @return the offset of the next unprocessed record in the file of {@link #getSplit()}
+   */
+  long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Records a unique solution that was written to the output.
+   */
+  void added(String uniqueSolution) throws IOException {
+    writeString(keyLog, uniqueSolution);
+    keyCount++;
+  }
+
+  /**
+   * Saves a checkpoint if the interval has elapsed since the last one.
+   *
+   * @param split the index of the split containing the next unprocessed record
+   * @param offset the offset of the next unprocessed record
+   * @param writer the writer of the output, it is flushed before the output length is recorded
+   */
+  void saveIfDue(int split, long offset, Flushable writer) throws IOException {
+    if (System.nanoTime() - lastSave >= intervalNanos) {
+      save(split, offset, writer);
+    }
+  }
+
+  /**
+   * Saves a checkpoint. The output and the key log are forced to disk before the checkpoint
+   * replaces the previous one, so a checkpoint never points past data that was lost in a crash.
+   */
+  void save(int split, long offset, Flushable writer) throws IOException {
+    writer.flush();
+    keyLog.flush();
+    force(output.toPath());
+    force(keyLogPath);
+    this.split = split;
+    this.offset = offset;
+    outputLength = output.length();
+    keyLogLength = Files.size(keyLogPath);
+    Path tmp = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+      out.writeUTF(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(splits.size());
+      for (FastaSplit s : splits) {
+        writeString(out, s.toString());
+      }
+      out.writeInt(split);
+      out.writeLong(offset);
+      out.writeLong(outputLength);
+      out.writeLong(keyLogLength);
+      out.writeLong(keyCount);
+    }
+    force(tmp);
+    Files.move(tmp, checkpointPath, REPLACE_EXISTING, ATOMIC_MOVE);
+    lastSave = System.nanoTime();
+  }
+
+  private void load() throws IOException {
+    if (!Files.isRegularFile(checkpointPath)) {
+      throw new IOException("Can not resume, there is no checkpoint " + checkpointPath);
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(checkpointPath.toFile())))) {
+      if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) {
+        throw new IOException("Not a checkpoint: " + checkpointPath);
+      }
+      int splitCount = in.readInt();
+      boolean matches = splitCount == splits.size();
+      for (int i = 0; i < splitCount; i++) {
+        String s = readString(in);
+        matches = matches && s.equals(splits.get(i).toString());
+      }
+      if (!matches) {
+        throw new IOException(
+            "Can not resume, the checkpoint " + checkpointPath + " was made for different inputs");
+      }
+      split = in.readInt();
+      offset = in.readLong();
+      outputLength = in.readLong();
+      keyLogLength = in.readLong();
+      keyCount = in.readLong();
+    }
+  }
+
+  /**
+   * Deletes the checkpoint after the extraction completed successfully.
+   */
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(checkpointPath);
+    Files.deleteIfExists(keyLogPath);
+  }
+
+  @Override
+  public void close() throws IOException {
+    keyLog.close();
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.main;
+
+import static de.adrodoc55.bio.dna.peptide.extractor.main.DataStreams.readString;
+import static de.adrodoc55.bio.dna.peptide.extractor.main.DataStreams.writeString;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import de.adrodoc55.bio.dna.peptide.extractor.dedupe.OffHeapKeySet;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
+import de.adrodoc55.bio.dna.peptide.extractor.output.ShardedOutput;
+
+/**
+ * Removes duplicate peptides with an external sort, so the memory used does not depend on the
+ * number of peptides.
+ * <p>
+ * Each peptide is appended to a spool file and numbered in input order. Its unique solution and
+ * number are buffered until the buffer reaches the memory limit. Then the buffer is sorted by
+ * unique solution and the first occurrence of each unique solution is written to a run file.
+ * {@link #writeTo(ShardedOutput, OffHeapKeySet)} merges the runs, marks the first occurrence of
+ * each unique solution in a memory mapped bitmap and replays the spool, writing only the marked
+ * peptides. At most {@link #MAX_FAN_IN} runs, each with a read buffer of
+ * {@link #MAX_RUN_BUFFER_SIZE} bytes and within the memory limit, are open at the same time. If
+ * there are more runs, they are first merged into fewer runs.
+ *
+ * @author Adrodoc55
+ */
+class ExternalDedupe implements PeptideConsumer, Closeable {
+  /**
+   * The estimated heap usage of a buffered entry in addition to the characters of its key.
+   */
+  private static final int ENTRY_OVERHEAD = 80;
+  private static final int MIN_RUN_BUFFER_SIZE = 1 << 12;
+  private static final int MAX_RUN_BUFFER_SIZE = 1 << 16;
+  /**
+   * The maximum number of runs that are merged at once, which stays well below the usual limit of
+   * open files.
+   */
+  private static final int MAX_FAN_IN = 256;
+  private static final int BITMAP_CHUNK_BITS = 30;
+  private static final long BITMAP_CHUNK_SIZE = 1L << BITMAP_CHUNK_BITS;
+  private static final Comparator<Entry> BY_UNIQUE_SOLUTION =
+      Comparator.comparing(entry -> entry.uniqueSolution);
+  private static final Comparator<Run> BY_UNIQUE_SOLUTION_AND_NUMBER =
+      Comparator.<Run, String>comparing(run -> run.uniqueSolution)
+          .thenComparingLong(run -> run.number);
+
+  private final long memory;
+  private final File spool;
+  private final DataOutputStream spoolOut;
+  private final List<File> runs = new ArrayList<>();
+  private File bitmap;
+
+  private final List<Entry> entries = new ArrayList<>();
+  private long entriesSize;
+  private long count;
+
+  /**
+   * @param memory the number of bytes that may be used to buffer unique solutions
+   * @throws IOException if the spool file can not be created
+   */
+  ExternalDedupe(long memory) throws IOException {
+    this.memory = memory;
+    spool = File.createTempFile("peptide-extractor-", ".spool");
+    spoolOut =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool), 1 << 16));
+  }
+
+  @Override
+  public void accept(String header, MutationType type, int position, CharSequence peptide,
+      String uniqueSolution) throws IOException {
+    writeString(spoolOut, uniqueSolution);
+    writeString(spoolOut, header);
+    spoolOut.writeByte(type.ordinal());
+    spoolOut.writeInt(position);
+    writeString(spoolOut, peptide.toString());
+    entries.add(new Entry(uniqueSolution, count++));
+    entriesSize += ENTRY_OVERHEAD + 2 * uniqueSolution.length();
+    if (entriesSize >= memory) {
+      spill();
+    }
+  }
+
+  /**
+   * Sorts the buffered entries and writes the first entry of each unique solution to a new run.
+   * The entries are buffered in input order and the sort is stable, so the first entry of a unique
+   * solution is its first occurrence.
+   */
+  private void spill() throws IOException {
+    if (entries.isEmpty()) {
+      return;
+    }
+    entries.sort(BY_UNIQUE_SOLUTION);
+    File run = File.createTempFile("peptide-extractor-", ".run");
+    runs.add(run);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+      String previous = null;
+      for (Entry entry : entries) {
+        if (!entry.uniqueSolution.equals(previous)) {
+          writeString(out, entry.uniqueSolution);
+          out.writeLong(entry.number);
+          previous = entry.uniqueSolution;
+        }
+      }
+    }
+    entries.clear();
+    entriesSize = 0;
+  }
+
+  /**
+   * Writes the first occurrence of each unique solution to {@code out} in input order. Must only
+   * be called once, after all peptides were accepted.
+   *
+   * @param out the output
+   * @param seen the unique solutions of previous runs, which are not written again, or
+   *        {@code null}
+   * @param updateSeen whether the written unique solutions are added to {@code seen}, otherwise it
+   *        is only looked up and may be read only
+   */
+  void writeTo(ShardedOutput out, OffHeapKeySet seen, boolean updateSeen) throws IOException {
+    spill();
+    spoolOut.close();
+    bitmap = File.createTempFile("peptide-extractor-", ".bitmap");
+    try (FileChannel channel = FileChannel.open(bitmap.toPath(), READ, WRITE)) {
+      long size = (count + Byte.SIZE - 1) / Byte.SIZE;
+      MappedByteBuffer[] chunks =
+          new MappedByteBuffer[(int) ((size + BITMAP_CHUNK_SIZE - 1) >>> BITMAP_CHUNK_BITS)];
+      for (int i = 0; i < chunks.length; i++) {
+        long offset = (long) i << BITMAP_CHUNK_BITS;
+        chunks[i] =
+            channel.map(MapMode.READ_WRITE, offset, Math.min(BITMAP_CHUNK_SIZE, size - offset));
+      }
+      markFirstOccurrences(chunks);
+      replay(chunks, out, seen, updateSeen);
+    }
+  }
+
+  /**
+   * Merges the runs and marks the smallest number of each unique solution. As long as there are
+   * too many runs to merge at once, the oldest runs are merged into a new run.
+   */
+  private void markFirstOccurrences(MappedByteBuffer[] bitmap) throws IOException {
+    int fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, memory / MAX_RUN_BUFFER_SIZE));
+    int bufferSize = (int) Math.max(MIN_RUN_BUFFER_SIZE,
+        Math.min(MAX_RUN_BUFFER_SIZE, memory / Math.max(1, Math.min(fanIn, runs.size()))));
+    while (runs.size() > fanIn) {
+      File merged = File.createTempFile("peptide-extractor-", ".run");
+      runs.add(merged);
+      List<File> group = runs.subList(0, fanIn);
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 1 << 16))) {
+        merge(group, bufferSize, (uniqueSolution, number) -> {
+          writeString(out, uniqueSolution);
+          out.writeLong(number);
+        });
+      }
+      for (File run : group) {
+        run.delete();
+      }
+      group.clear();
+    }
+    merge(runs, bufferSize, (uniqueSolution, number) -> mark(bitmap, number));
+  }
+
+  /**
+   * Merges {@code files} and passes the smallest number of each unique solution to {@code sink}
+   * in the order of the unique solutions.
+   */
+  private static void merge(List<File> files, int bufferSize, RunSink sink) throws IOException {
+    List<Run> opened = new ArrayList<>(files.size());
+    try {
+      PriorityQueue<Run> queue =
+          new PriorityQueue<>(Math.max(1, files.size()), BY_UNIQUE_SOLUTION_AND_NUMBER);
+      for (File file : files) {
+        Run run = new Run(file, bufferSize);
+        opened.add(run);
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+      String previous = null;
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        if (!run.uniqueSolution.equals(previous)) {
+          sink.accept(run.uniqueSolution, run.number);
+          previous = run.uniqueSolution;
+        }
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+    } finally {
+      for (Run run : opened) {
+        run.close();
+      }
+    }
+  }
+
+  /**
+   * Writes the marked peptides. Each unique solution is marked at most once, so only
+   * {@code seen} has to be checked for duplicates.
+   */
+  private void replay(MappedByteBuffer[] bitmap, ShardedOutput out, OffHeapKeySet seen,
+      boolean updateSeen) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(spool), 1 << 16))) {
+      for (long number = 0; number < count; number++) {
+        String uniqueSolution = readString(in);
+        String header = readString(in);
+        MutationType type = MutationType.fromOrdinal(in.readUnsignedByte());
+        int position = in.readInt();
+        String peptide = readString(in);
+        if (isMarked(bitmap, number) && (seen == null
+            || (updateSeen ? seen.add(uniqueSolution) : !seen.contains(uniqueSolution)))) {
+          out.get(header, uniqueSolution).write(header, type, position, peptide);
+        }
+      }
+    }
+  }
+
+  private static void mark(MappedByteBuffer[] bitmap, long number) {
+    long index = number / Byte.SIZE;
+    MappedByteBuffer chunk = bitmap[(int) (index >>> BITMAP_CHUNK_BITS)];
+    int position = (int) (index & BITMAP_CHUNK_SIZE - 1);
+    chunk.put(position, (byte) (chunk.get(position) | 1 << (number % Byte.SIZE)));
+  }
+
+  private static boolean isMarked(MappedByteBuffer[] bitmap, long number) {
+    long index = number / Byte.SIZE;
+    MappedByteBuffer chunk = bitmap[(int) (index >>> BITMAP_CHUNK_BITS)];
+    int position = (int) (index & BITMAP_CHUNK_SIZE - 1);
+    return (chunk.get(position) & 1 << (number % Byte.SIZE)) != 0;
+  }
+
+  /**
+   * Deletes all temporary files.
+   */
+  @Override
+  public void close() throws IOException {
+    spoolOut.close();
+    spool.delete();
+    for (File run : runs) {
+      run.delete();
+    }
+    if (bitmap != null) {
+      bitmap.delete();
+    }
+  }
+
+  private static class Entry {
+    private final String uniqueSolution;
+    private final long number;
+
+    Entry(String uniqueSolution, long number) {
+      this.uniqueSolution = uniqueSolution;
+      this.number = number;
+    }
+  }
+
+  @FunctionalInterface
+  private interface RunSink {
+    void accept(String uniqueSolution, long number) throws IOException;
+  }
+
+  /**
+   * Reads the entries of a run in order.
+   */
+  private static class Run implements Closeable {
+    private final DataInputStream in;
+    private String uniqueSolution;
+    private long number;
+
+    Run(File file, int bufferSize) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), bufferSize));
+    }
+
+    /**
+     * @return {@code false} if the run is exhausted
+     */
+    boolean next() throws IOException {
+      try {
+        uniqueSolution = readString(in);
+      } catch (EOFException ex) {
+        return false;
+      }
+      number = in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
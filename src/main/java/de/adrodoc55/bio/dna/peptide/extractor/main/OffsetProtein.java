@@ -0,0 +1,119 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.main;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * A protein of which the residues before an offset were skipped while reading. It has the length
+ * of the whole protein, so a {@link de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutation} can
+ * access it with the indices of the whole protein, but the skipped residues can not be accessed.
+ * <p>
+ * Instances are reused for each record by {@link #set(PackedProtein, int)}, usually with an offset
+ * of 0.
+ *
+ * @author Adrodoc55
+ */
+final class OffsetProtein implements CharSequence {
+  private PackedProtein residues;
+  private int offset;
+
+  /**
+   * @param residues the residues that were read
+   * @param offset the number of residues that were skipped before {@code residues}
+   * @return this
+   */
+  OffsetProtein set(PackedProtein residues, int offset) {
+    this.residues = residues;
+    this.offset = offset;
+    return this;
+  }
+
+  /**
+   * @return the residues that were read if nothing was skipped, so a mutation can use the fast
+   *         paths of {@link PackedProtein}, otherwise this
+   */
+  CharSequence asSequence() {
+    return offset == 0 ? residues : this;
+  }
+
+  @Override
+  public int length() {
+    return offset + residues.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < offset) {
+      throw new StringIndexOutOfBoundsException("index " + index + " was skipped");
+    }
+    if (index >= length()) {
+      throw new StringIndexOutOfBoundsException("index " + index + ", length " + length());
+    }
+    return residues.charAt(index - offset);
+  }
+
+  @Override
+  public PackedProtein subSequence(int start, int end) {
+    checkRange(start, end);
+    return residues.subSequence(start - offset, end - offset);
+  }
+
+  /**
+   * Like {@link PackedProtein#subSequence(int, int, PackedProtein)}, but with the indices of the
+   * whole protein.
+   */
+  PackedProtein subSequence(int start, int end, PackedProtein window) {
+    checkRange(start, end);
+    return residues.subSequence(start - offset, end - offset, window);
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < offset) {
+      throw new StringIndexOutOfBoundsException("begin " + start + " was skipped");
+    }
+    if (start > end || end > length()) {
+      throw new StringIndexOutOfBoundsException(
+          "begin " + start + ", end " + end + ", length " + length());
+    }
+  }
+}
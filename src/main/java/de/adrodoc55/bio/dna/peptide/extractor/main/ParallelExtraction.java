@@ -0,0 +1,206 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.main;
+
+import static de.adrodoc55.bio.dna.peptide.extractor.main.DataStreams.readString;
+import static de.adrodoc55.bio.dna.peptide.extractor.main.DataStreams.writeString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.adrodoc55.bio.dna.fasta.FastaReader;
+import de.adrodoc55.bio.dna.fasta.FastaSplit;
+import de.adrodoc55.bio.dna.peptide.extractor.PeptideExtractorException;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationCache;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
+
+/**
+ * Extracts the peptides of multiple inputs or {@link FastaSplit splits} concurrently while
+ * producing exactly the same output as a sequential run over the concatenated inputs.
+ * <p>
+ * The splits are scheduled largest first. Each worker spools its peptides to a temporary file. The
+ * spools are replayed in input order as soon as their split is complete and all peptides are passed
+ * on, so the consumer sees them in the same order as in a sequential run and its set of unique
+ * solutions decides which occurrence is written. If a split fails, the splits before it and the
+ * peptides the failed split produced before the error are passed on before the error is thrown,
+ * just like a sequential run would have written them.
+ *
+ * @author Adrodoc55
+ */
+class ParallelExtraction {
+  private final List<FastaSplit> splits;
+  private final boolean multipleInputs;
+  private final MutationCache mutationCache;
+  private final PeptideExtractorParameter params;
+
+  /**
+   * @param splits the splits in input order
+   * @param multipleInputs whether the splits belong to more than one input file
+   * @param mutationCache the cache shared by all workers or {@code null}
+   * @param params
+   */
+  ParallelExtraction(List<FastaSplit> splits, boolean multipleInputs,
+      MutationCache mutationCache, PeptideExtractorParameter params) {
+    this.splits = splits;
+    this.multipleInputs = multipleInputs;
+    this.mutationCache = mutationCache;
+    this.params = params;
+  }
+
+  public void run(PeptideConsumer consumer) throws IOException, PeptideExtractorException {
+    int threads = Math.min(params.getThreads(), splits.size());
+    int decompressionThreads = Math.max(1, params.getThreads() / splits.size());
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("extractor-%d").build());
+    File[] spools = new File[splits.size()];
+    List<Future<?>> futures = new ArrayList<>(Collections.nCopies(splits.size(), null));
+    try {
+      for (int index : largestFirst()) {
+        spools[index] = File.createTempFile("peptide-extractor-", ".spool");
+        futures.set(index, executor.submit(() -> {
+          spool(index, spools[index], decompressionThreads);
+          return null;
+        }));
+      }
+      for (int index = 0; index < spools.length; index++) {
+        try {
+          await(futures.get(index));
+        } catch (PeptideExtractorException ex) {
+          // The spool is complete up to the error
+          replay(spools[index], consumer);
+          throw ex;
+        }
+        replay(spools[index], consumer);
+      }
+    } finally {
+      executor.shutdownNow();
+      for (File spool : spools) {
+        if (spool != null) {
+          spool.delete();
+        }
+      }
+    }
+  }
+
+  private List<Integer> largestFirst() throws IOException {
+    List<Integer> indices = new ArrayList<>();
+    long[] sizes = new long[splits.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = splits.get(i).length();
+      indices.add(i);
+    }
+    indices.sort(Comparator.comparingLong((Integer i) -> sizes[i]).reversed());
+    return indices;
+  }
+
+  private void spool(int index, File spool, int decompressionThreads)
+      throws IOException, PeptideExtractorException {
+    FastaSplit split = splits.get(index);
+    String source = multipleInputs ? split.getPath().toString() : null;
+    try (FastaReader in = split.open(decompressionThreads);
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool), 1 << 16))) {
+      PeptideExtractorMain.extract(in, source, (header, type, position, peptide, key) -> {
+        writeString(out, key);
+        writeString(out, header);
+        out.writeByte(type.ordinal());
+        out.writeInt(position);
+        writeString(out, peptide.toString());
+      }, mutationCache, params);
+    }
+  }
+
+  private void replay(File spool, PeptideConsumer consumer) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(spool), 1 << 16))) {
+      while (true) {
+        String uniqueSolution;
+        try {
+          uniqueSolution = readString(in);
+        } catch (EOFException ex) {
+          break;
+        }
+        String header = readString(in);
+        MutationType type = MutationType.fromOrdinal(in.readUnsignedByte());
+        int position = in.readInt();
+        String peptide = readString(in);
+        consumer.accept(header, type, position, peptide, uniqueSolution);
+      }
+    }
+  }
+
+  private static void await(Future<?> future) throws IOException, PeptideExtractorException {
+    try {
+      future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while extracting peptides", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof PeptideExtractorException) {
+        throw (PeptideExtractorException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      Throwables.throwIfUnchecked(cause);
+      throw new PeptideExtractorException(cause);
+    }
+  }
+}
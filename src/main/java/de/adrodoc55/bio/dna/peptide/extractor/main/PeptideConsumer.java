@@ -0,0 +1,76 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.main;
+
+import java.io.IOException;
+
+import de.adrodoc55.bio.dna.fasta.FastaReader;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutation;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
+
+/**
+ * Receives the peptides extracted from the records of an input in input order.
+ *
+ * @author Adrodoc55
+ */
+@FunctionalInterface
+interface PeptideConsumer {
+  /**
+   * @param header the header of the record
+   * @param type the type of the mutation
+   * @param position the (1 based) index of the mutation, see {@link Mutation#getMutationIndex()}
+   * @param peptide the extracted peptide, which may be reused after this call returns
+   * @param uniqueSolution the key identifying duplicate peptides, see
+   *        {@link Mutation#getUniqueSolution(CharSequence)}
+   * @throws IOException
+   */
+  void accept(String header, MutationType type, int position, CharSequence peptide,
+      String uniqueSolution) throws IOException;
+
+  /**
+   * Called after each record of {@code in} was processed, whether it produced a peptide or not.
+   *
+   * @param in the input, positioned at the processed record
+   * @throws IOException
+   */
+  default void recordProcessed(FastaReader in) throws IOException {}
+}
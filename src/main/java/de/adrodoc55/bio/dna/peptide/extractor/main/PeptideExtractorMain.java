@@ -41,29 +41,54 @@
  */
 package de.adrodoc55.bio.dna.peptide.extractor.main;
 
-import static de.adrodoc55.bio.dna.FastaConstants.COMMENT_PREFIX;
-import static de.adrodoc55.bio.dna.FastaConstants.HEADER_PREFIX;
-import static de.adrodoc55.bio.dna.FastaConstants.MAX_LINE_LENGTH;
+import static java.util.stream.Collectors.toList;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.LineNumberReader;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
-import com.google.common.base.Splitter;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Range;
 import com.google.common.io.Files;
 
+import de.adrodoc55.bio.dna.PackedProtein;
+import de.adrodoc55.bio.dna.fasta.FastaIndex;
+import de.adrodoc55.bio.dna.fasta.FastaReader;
+import de.adrodoc55.bio.dna.fasta.FastaReaders;
+import de.adrodoc55.bio.dna.fasta.FastaSplit;
 import de.adrodoc55.bio.dna.peptide.extractor.PeptideExtractorException;
+import de.adrodoc55.bio.dna.peptide.extractor.ValidationException;
+import de.adrodoc55.bio.dna.peptide.extractor.dedupe.DedupeMode;
+import de.adrodoc55.bio.dna.peptide.extractor.dedupe.NearDuplicateIndex;
+import de.adrodoc55.bio.dna.peptide.extractor.dedupe.OffHeapKeySet;
 import de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutation;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationBatch;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationCache;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
 import de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutations;
 import de.adrodoc55.bio.dna.peptide.extractor.mutation.SilentSingleNucleotidePolymorphism;
 import de.adrodoc55.bio.dna.peptide.extractor.mutation.Termination;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.ValidationResult;
+import de.adrodoc55.bio.dna.peptide.extractor.output.AsyncChannelOutputStream;
+import de.adrodoc55.bio.dna.peptide.extractor.output.ColumnarPeptideReader;
+import de.adrodoc55.bio.dna.peptide.extractor.output.ColumnarPeptideWriter;
+import de.adrodoc55.bio.dna.peptide.extractor.output.FastaPeptideWriter;
+import de.adrodoc55.bio.dna.peptide.extractor.output.OutputFormat;
+import de.adrodoc55.bio.dna.peptide.extractor.output.Partitioning;
+import de.adrodoc55.bio.dna.peptide.extractor.output.PeptideWriter;
+import de.adrodoc55.bio.dna.peptide.extractor.output.ShardedOutput;
 
 /**
  * @author Adrodoc55
@@ -89,75 +114,586 @@ public class PeptideExtractorMain {
 
   private static void main(PeptideExtractorParameter params)
       throws IOException, PeptideExtractorException {
-    File input = params.getInput();
+    List<Path> inputs = params.getInputs();
+    if (params.isBuildIndex()) {
+      for (Path input : inputs) {
+        if (FastaReaders.STDIN.equals(input)) {
+          throw new ParameterException("The standard input can not be indexed");
+        }
+        FastaIndex index = FastaIndex.build(input);
+        index.write(FastaIndex.getIndexPath(input));
+        System.err.println("Indexed " + index.size() + " records of " + input);
+      }
+      return;
+    }
+    if (params.isConvert()) {
+      convert(inputs, params);
+      return;
+    }
+    List<FastaSplit> splits = split(inputs, params);
 
-    File outputFile = params.getOutput();
-    Files.createParentDirs(outputFile);
-    outputFile.createNewFile();
-
-    try (LineNumberReader in = new LineNumberReader(new FileReader(input));
-        BufferedWriter out = new BufferedWriter(new FileWriter(outputFile));) {
-      Set<String> uniqueSolutions = new HashSet<>();
-      String lastHeader = null;
-      int lastHeaderLineNumber = -1;
-      StringBuilder protein = new StringBuilder();
-      while (true) {
-        String line = in.readLine();
-        if (line == null || line.startsWith(HEADER_PREFIX)) {
-          if (lastHeader != null) {
-            processMutation(lastHeader, lastHeaderLineNumber, protein, uniqueSolutions, out,
-                params);
+    MutationCache mutationCache = openMutationCache(params);
+    OffHeapKeySet seen = openSeenIndex(params);
+    boolean updateSeen = seen != null && params.isUpdateSeenIndex();
+    boolean external = params.getDedupe() == DedupeMode.EXTERNAL;
+    // An updated seen index receives the keys of this run directly, so each key is only held once.
+    // A seen index that is only consulted is read only, so the keys are kept in a layered set.
+    OffHeapKeySet uniqueSolutions = external ? null
+        : updateSeen ? seen : seen != null ? new OffHeapKeySet(seen) : new OffHeapKeySet();
+    Checkpoint checkpoint = openCheckpoint(params, splits, uniqueSolutions);
+    int collapseDistance = params.getCollapseDistance();
+    NearDuplicateIndex nearDuplicates =
+        collapseDistance > 0 ? new NearDuplicateIndex(collapseDistance) : null;
+    try (ShardedOutput out = openOutput(params, checkpoint != null && params.isResume());
+        Writer collapsed = openCollapsedMapping(params)) {
+      boolean flushEachRecord = params.isStdout();
+      PeptideConsumer consumer = (header, type, position, peptide, uniqueSolution) -> {
+        if (uniqueSolutions.add(uniqueSolution)
+            && !collapse(nearDuplicates, header, peptide, collapsed)) {
+          out.get(header, uniqueSolution).write(header, type, position, peptide);
+          if (flushEachRecord) {
+            out.flush();
           }
-        } else if (!line.startsWith(COMMENT_PREFIX)) {
-          protein.append(line.trim());
         }
-        if (line == null) {
-          break;
-        } else if (line.startsWith(HEADER_PREFIX)) {
-          lastHeader = line;
-          lastHeaderLineNumber = in.getLineNumber();
-          protein.setLength(0);
+      };
+      if (checkpoint != null) {
+        extractWithCheckpoints(inputs, splits, checkpoint, uniqueSolutions, out, mutationCache,
+            params);
+      } else if (external) {
+        try (ExternalDedupe dedupe = new ExternalDedupe(params.getMemory())) {
+          extractSplits(inputs, splits, dedupe, mutationCache, params);
+          dedupe.writeTo(out, seen, updateSeen);
+        }
+      } else {
+        extractSplits(inputs, splits, consumer, mutationCache, params);
+      }
+    }
+    if (updateSeen) {
+      seen.save(params.getSeenIndex().toPath());
+    }
+    if (nearDuplicates != null) {
+      System.err.println("Collapsed " + nearDuplicates.getCollapsedCount()
+          + " peptides into " + nearDuplicates.size() + " within a Hamming distance of "
+          + collapseDistance);
+    }
+    if (mutationCache != null) {
+      CacheStats stats = mutationCache.getStats();
+      System.err.println("Mutation cache: " + stats.hitCount() + " hits, " + stats.missCount()
+          + " misses, " + stats.evictionCount() + " evictions");
+    }
+  }
+
+  /**
+   * Extracts the peptides of all splits, concurrently if there are multiple splits and threads.
+   */
+  private static void extractSplits(List<Path> inputs, List<FastaSplit> splits,
+      PeptideConsumer consumer, MutationCache mutationCache, PeptideExtractorParameter params)
+      throws IOException, PeptideExtractorException {
+    if (splits.size() > 1 && params.getThreads() > 1) {
+      new ParallelExtraction(splits, inputs.size() > 1, mutationCache, params).run(consumer);
+    } else {
+      for (FastaSplit split : splits) {
+        try (FastaReader in = split.open(params.getThreads())) {
+          extract(in, getSource(inputs, split), consumer, mutationCache, params);
         }
       }
     }
   }
 
-  private static final Splitter SPLITTER = Splitter.fixedLength(MAX_LINE_LENGTH);
+  /**
+   * Opens the file to which the near duplicates collapsed by {@code --collapse-distance} are
+   * written, one line per near duplicate: its header, its peptide and the peptide it was collapsed
+   * into, separated by tabs.
+   *
+   * @return the writer or {@code null} if near duplicates are not collapsed
+   */
+  private static Writer openCollapsedMapping(PeptideExtractorParameter params)
+      throws IOException {
+    if (params.getCollapseDistance() == 0) {
+      return null;
+    }
+    if (params.isStdout()) {
+      throw new ParameterException("--collapse-distance requires an output file");
+    }
+    if (params.getDedupe() == DedupeMode.EXTERNAL) {
+      throw new ParameterException("--collapse-distance can not be used with --dedupe EXTERNAL");
+    }
+    File file = new File(params.getOutput().getPath() + COLLAPSED_SUFFIX);
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)), 1 << 16);
+  }
+
+  private static final String COLLAPSED_SUFFIX = ".collapsed.tsv";
+
+  /**
+   * Checks whether {@code peptide} is a near duplicate of a written peptide and if so, writes it to
+   * the mapping of collapsed peptides.
+   *
+   * @param nearDuplicates the written peptides or {@code null} if nothing is collapsed
+   * @return {@code true} if the peptide was collapsed and must not be written
+   */
+  private static boolean collapse(NearDuplicateIndex nearDuplicates, String header,
+      CharSequence peptide, Writer collapsed) throws IOException {
+    if (nearDuplicates == null) {
+      return false;
+    }
+    int id = nearDuplicates.findOrAdd(peptide);
+    if (id < 0) {
+      return false;
+    }
+    collapsed.append(header).append('\t').append(peptide).append('\t')
+        .append(nearDuplicates.getPeptide(id)).append('\n');
+    return true;
+  }
+
+  /**
+   * Opens the index of the unique solutions written by previous runs. It is only writable if it
+   * should be updated, otherwise it is opened read only. If it should be updated, but does not
+   * exist yet, an empty set is returned.
+   *
+   * @return the unique solutions of previous runs or {@code null} if no index was specified
+   */
+  private static OffHeapKeySet openSeenIndex(PeptideExtractorParameter params)
+      throws IOException {
+    File index = params.getSeenIndex();
+    if (index == null) {
+      return null;
+    }
+    if (index.exists()) {
+      return OffHeapKeySet.open(index.toPath(), params.isUpdateSeenIndex());
+    }
+    if (params.isUpdateSeenIndex()) {
+      return new OffHeapKeySet();
+    }
+    throw new ParameterException("The seen index " + index + " does not exist");
+  }
+
+  private static MutationCache openMutationCache(PeptideExtractorParameter params) {
+    int size = params.getMutationCacheSize();
+    if (size == 0) {
+      return null;
+    }
+    return new MutationCache(size, params.getMutationCachePolicy(), params.getThreads());
+  }
+
+  /**
+   * Writes the peptides of the columnar peptide files {@code inputs} to the output.
+   */
+  private static void convert(List<Path> inputs, PeptideExtractorParameter params)
+      throws IOException {
+    if (params.getShards() > 1 && params.getPartitioning() == Partitioning.KEY) {
+      throw new ParameterException("Converted peptides can only be sharded by gene");
+    }
+    try (ShardedOutput out = openOutput(params, false)) {
+      for (Path input : inputs) {
+        if (FastaReaders.STDIN.equals(input)) {
+          throw new ParameterException("The standard input can not be converted");
+        }
+        try (ColumnarPeptideReader in = new ColumnarPeptideReader(input)) {
+          in.verifyChecksum();
+          for (int i = 0; i < in.size(); i++) {
+            String header = in.getHeader(i);
+            out.get(header, null).write(header, in.getType(i), in.getPosition(i), in.getPeptide(i));
+          }
+        }
+      }
+    }
+  }
+
+  private static ShardedOutput openOutput(PeptideExtractorParameter params, boolean append)
+      throws IOException {
+    int shards = params.getShards();
+    if (params.isStdout()) {
+      if (shards > 1) {
+        throw new ParameterException("The standard output can not be sharded");
+      }
+      PeptideWriter writer = openWriter(new FileOutputStream(FileDescriptor.out), params);
+      return new ShardedOutput(Collections.singletonList(writer), params.getPartitioning());
+    }
+    File outputFile = params.getOutput();
+    Files.createParentDirs(outputFile);
+    if (shards == 1) {
+      PeptideWriter writer = openWriter(new FileOutputStream(outputFile, append), params);
+      return new ShardedOutput(Collections.singletonList(writer), params.getPartitioning());
+    }
+    List<PeptideWriter> writers = new ArrayList<>(shards);
+    try {
+      for (int i = 0; i < shards; i++) {
+        File shardFile = ShardedOutput.getShardFile(outputFile, i);
+        writers.add(openWriter(new FileOutputStream(shardFile, append), params));
+      }
+    } catch (IOException ex) {
+      for (PeptideWriter writer : writers) {
+        writer.close();
+      }
+      throw ex;
+    }
+    return new ShardedOutput(writers, params.getPartitioning());
+  }
+
+  private static PeptideWriter openWriter(FileOutputStream stream,
+      PeptideExtractorParameter params) throws IOException {
+    OutputStream out;
+    int buffers = params.getOutputBuffers();
+    if (buffers == 0) {
+      out = new BufferedOutputStream(stream, 1 << 16);
+    } else {
+      int bufferSize = params.getOutputBufferSize();
+      out = new AsyncChannelOutputStream(stream.getChannel(), bufferSize, buffers);
+    }
+    switch (params.getFormat()) {
+      case COLUMNAR:
+        return new ColumnarPeptideWriter(out);
+      case FASTA:
+      default:
+        return new FastaPeptideWriter(out, params.getLineWidth());
+    }
+  }
+
+  private static Checkpoint openCheckpoint(PeptideExtractorParameter params,
+      List<FastaSplit> splits, OffHeapKeySet uniqueSolutions) throws IOException {
+    if (!params.isCheckpoint()) {
+      return null;
+    }
+    boolean stdin = splits.stream().anyMatch(split -> FastaReaders.STDIN.equals(split.getPath()));
+    if (params.isStdout() || stdin) {
+      throw new ParameterException("Checkpoints can not be used with standard input or output");
+    }
+    if (params.getFormat() != OutputFormat.FASTA || params.getShards() > 1) {
+      throw new ParameterException("Checkpoints can only be used with a single FASTA output");
+    }
+    if (params.isGroupProteins()) {
+      throw new ParameterException("Checkpoints can not be used with --group-proteins");
+    }
+    if (params.getDedupe() == DedupeMode.EXTERNAL) {
+      throw new ParameterException("Checkpoints can not be used with --dedupe EXTERNAL");
+    }
+    if (params.getCollapseDistance() > 0) {
+      throw new ParameterException("Checkpoints can not be used with --collapse-distance");
+    }
+    File outputFile = params.getOutput();
+    long interval = params.getCheckpointInterval();
+    if (params.isResume()) {
+      return Checkpoint.resume(outputFile, splits, interval, uniqueSolutions);
+    }
+    Files.createParentDirs(outputFile);
+    return Checkpoint.start(outputFile, splits, interval);
+  }
 
-  private static void processMutation(String header, int headerLineNumber, StringBuilder protein,
-      Set<String> uniqueSolutions, BufferedWriter out, PeptideExtractorParameter params)
+  /**
+   * Processes the splits sequentially, starting at the position of {@code checkpoint}, and
+   * periodically saves a checkpoint. If a record fails, a checkpoint pointing to that record is
+   * saved before the error is propagated.
+   */
+  private static void extractWithCheckpoints(List<Path> inputs, List<FastaSplit> splits,
+      Checkpoint checkpoint, OffHeapKeySet uniqueSolutions, ShardedOutput out,
+      MutationCache mutationCache, PeptideExtractorParameter params)
       throws IOException, PeptideExtractorException {
-    String mutationDescription = header + " in line " + headerLineNumber;
     try {
-      Mutation mutation = Mutations.parse(header);
-      if (mutation instanceof SilentSingleNucleotidePolymorphism) {
-        System.err.println("Ignoring silent mutation " + mutationDescription
-            + ", because silent mutations don't cause an aminoacid sequence alternation");
-      } else if (mutation instanceof Termination) {
-        System.err.println("Ignoring terminating mutation " + mutationDescription
-            + ", because terminating mutations don't cause an aminoacid sequence alternation");
-      } else if (mutation != null) {
-        CharSequence output = mutation.extractFromProtein(protein, params.getEnclosing());
-        String uniqueSolution = mutation.getUniqueSolution(output);
-        if (uniqueSolutions.add(uniqueSolution)) {
-          out.write(header);
-          out.newLine();
-          for (String subOutput : SPLITTER.split(output)) {
-            out.write(subOutput);
-            out.newLine();
+      for (int i = checkpoint.getSplit(); i < splits.size(); i++) {
+        FastaSplit split = splits.get(i);
+        int splitIndex = i;
+        try (FastaReader in = split.open(params.getThreads())) {
+          if (i == checkpoint.getSplit() && checkpoint.getOffset() > 0) {
+            in.seek(checkpoint.getOffset());
+          }
+          try {
+            extract(in, getSource(inputs, split), new PeptideConsumer() {
+              @Override
+              public void accept(String header, MutationType type, int position,
+                  CharSequence peptide, String uniqueSolution) throws IOException {
+                if (uniqueSolutions.add(uniqueSolution)) {
+                  out.get(header, uniqueSolution).write(header, type, position, peptide);
+                  checkpoint.added(uniqueSolution);
+                }
+              }
+
+              @Override
+              public void recordProcessed(FastaReader in) throws IOException {
+                checkpoint.saveIfDue(splitIndex, in.getEndOffset(), out);
+              }
+            }, mutationCache, params);
+          } catch (PeptideExtractorException ex) {
+            checkpoint.save(splitIndex, in.getHeaderOffset(), out);
+            throw ex;
           }
         }
-      } else {
-        throw new PeptideExtractorException("Unrecognized mutation header");
       }
+      checkpoint.delete();
+    } finally {
+      checkpoint.close();
+    }
+  }
+
+  private static String getSource(List<Path> inputs, FastaSplit split) {
+    return inputs.size() > 1 ? split.getPath().toString() : null;
+  }
+
+  /**
+   * If requested, uses the {@link FastaIndex} of each input to restrict it to the selected records
+   * and to cut it into byte ranges of similar size, so a single large input can be processed by
+   * multiple threads. Compressed inputs can not be indexed, they are processed as a whole.
+   */
+  private static List<FastaSplit> split(List<Path> inputs, PeptideExtractorParameter params)
+      throws IOException {
+    Range<Integer> records = params.getRecords();
+    if (!params.isIndex() && records == null) {
+      return inputs.stream().map(FastaSplit::of).collect(toList());
+    }
+    long totalSize = 0;
+    for (Path input : inputs) {
+      totalSize += input.toFile().length();
+    }
+    int totalParts = SPLITS_PER_THREAD * params.getThreads();
+    List<FastaSplit> result = new ArrayList<>();
+    for (Path input : inputs) {
+      if (FastaReaders.STDIN.equals(input)) {
+        throw new ParameterException("The standard input can not be indexed");
+      }
+      if (FastaIndex.isCompressed(input)) {
+        if (records != null) {
+          throw new ParameterException("Records can only be selected in uncompressed inputs: "
+              + input);
+        }
+        result.add(FastaSplit.of(input));
+        continue;
+      }
+      FastaIndex index = FastaIndex.loadOrBuild(input);
+      int fromRecord = 1;
+      int toRecord = index.size();
+      if (records != null && records.hasLowerBound()) {
+        fromRecord = Math.max(fromRecord, records.lowerEndpoint());
+      }
+      if (records != null && records.hasUpperBound()) {
+        toRecord = Math.min(toRecord, records.upperEndpoint());
+      }
+      double share = (double) input.toFile().length() / Math.max(1, totalSize);
+      int parts = (int) Math.max(1, Math.round(totalParts * share));
+      result.addAll(index.split(input, fromRecord, toRecord, parts));
+    }
+    return result;
+  }
+
+  private static final int SPLITS_PER_THREAD = 4;
+
+  /**
+   * Extracts the peptides of all records of {@code in} and passes them to {@code consumer}.
+   *
+   * @param in the input
+   * @param source the name of the input used in messages or {@code null} if there is only one
+   * @param consumer
+   * @param mutationCache the cache used to parse headers or {@code null} to parse each header
+   * @param params
+   * @throws IOException
+   * @throws PeptideExtractorException
+   */
+  static void extract(FastaReader in, String source, PeptideConsumer consumer,
+      MutationCache mutationCache, PeptideExtractorParameter params)
+      throws IOException, PeptideExtractorException {
+    in.setNormalizeSequences(params.isNormalizeSequences());
+    if (params.isGroupProteins()) {
+      extractGrouped(in, source, consumer, mutationCache, params);
+      return;
+    }
+    PackedProtein protein = new PackedProtein();
+    PackedProtein window = protein.subSequence(0, 0);
+    OffsetProtein offsetProtein = new OffsetProtein();
+    StringBuilder uniqueSolution = new StringBuilder();
+    while (in.nextRecord()) {
+      processMutation(in, source, protein, offsetProtein, window, uniqueSolution, consumer,
+          mutationCache, params);
+      consumer.recordProcessed(in);
+    }
+  }
+
+  /**
+   * Processes the current record of {@code in}. {@code protein}, {@code offsetProtein},
+   * {@code window} and {@code uniqueSolution} are reused for each record, so apart from the header
+   * and the key of the peptide nothing is allocated for a valid record.
+   */
+  private static void processMutation(FastaReader in, String source, PackedProtein protein,
+      OffsetProtein offsetProtein, PackedProtein window, StringBuilder uniqueSolution,
+      PeptideConsumer consumer, MutationCache mutationCache, PeptideExtractorParameter params)
+      throws IOException, PeptideExtractorException {
+    String header = in.getHeader();
+    Mutation mutation;
+    try {
+      mutation = parseMutation(header, in, source, mutationCache);
     } catch (PeptideExtractorException ex) {
-      if (params.isIgnoreErrors()) {
-        System.err.println(
-            "Ignoring mutation " + mutationDescription + " due to: " + ex.getLocalizedMessage());
-      } else {
-        throw new PeptideExtractorException(
-            "Error at mutation " + mutationDescription + ": " + ex.getLocalizedMessage(), ex);
+      handleError(ex, describe(header, in, source), params);
+      return;
+    }
+    if (mutation != null) {
+      // Only the aminoacids of the extracted window are read, the ones before it are skipped
+      int enclosing = params.getEnclosing();
+      protein.clear();
+      int skipped = in.readSequence(protein, mutation.getRequiredBegin(enclosing),
+          mutation.getRequiredLength(enclosing));
+      ValidationResult result = checkSequence(in);
+      if (result.isValid()) {
+        result = extractPeptide(header, mutation, offsetProtein.set(protein, skipped), window,
+            uniqueSolution, consumer, enclosing);
       }
+      if (!result.isValid()) {
+        handleInvalid(result, describe(header, in, source), params);
+      }
+    }
+  }
+
+  /**
+   * Reads all records of {@code in}, storing each distinct protein sequence once in
+   * {@link ProteinGroups}, and then extracts the peptides of each protein together. The peptides
+   * are passed to {@code consumer} grouped by protein in the order in which each protein first
+   * occurred.
+   */
+  private static void extractGrouped(FastaReader in, String source, PeptideConsumer consumer,
+      MutationCache mutationCache, PeptideExtractorParameter params)
+      throws IOException, PeptideExtractorException {
+    ProteinGroups groups = new ProteinGroups();
+    PackedProtein protein = new PackedProtein();
+    while (in.nextRecord()) {
+      String header = in.getHeader();
+      Mutation mutation;
+      try {
+        mutation = parseMutation(header, in, source, mutationCache);
+      } catch (PeptideExtractorException ex) {
+        handleError(ex, describe(header, in, source), params);
+        mutation = null;
+      }
+      if (mutation != null) {
+        protein.clear();
+        in.readSequence(protein);
+        ValidationResult result = checkSequence(in);
+        if (result.isValid()) {
+          groups.add(protein, header, in.getHeaderLineNumber(), mutation);
+        } else {
+          handleInvalid(result, describe(header, in, source), params);
+        }
+      }
+      consumer.recordProcessed(in);
     }
+    int[] records = groups.getRecordsByProtein();
+    MutationBatch mutations = groups.getMutations();
+    int enclosing = params.getEnclosing();
+    int[] begins = new int[records.length];
+    int[] ends = new int[records.length];
+    PackedProtein window = protein.subSequence(0, 0);
+    StringBuilder uniqueSolution = new StringBuilder();
+    for (int from = 0, to; from < records.length; from = to) {
+      PackedProtein groupProtein = groups.getProtein(records[from]);
+      to = from + 1;
+      while (to < records.length && groups.getProtein(records[to]) == groupProtein) {
+        to++;
+      }
+      mutations.computeWindows(records, from, to, groupProtein.length(), enclosing, begins, ends);
+      for (int k = from; k < to; k++) {
+        int record = records[k];
+        String header = groups.getHeader(record);
+        ValidationResult result = mutations.check(record, groupProtein);
+        if (!result.isValid()) {
+          handleInvalid(result, describe(header, groups.getHeaderLineNumber(record), source),
+              params);
+          continue;
+        }
+        PackedProtein output = groupProtein.subSequence(begins[k], ends[k], window);
+        uniqueSolution.setLength(0);
+        mutations.appendUniqueSolution(record, output, uniqueSolution);
+        consumer.accept(header, mutations.getType(record), mutations.getMutationIndex(record),
+            output, uniqueSolution.toString());
+      }
+    }
+  }
+
+  /**
+   * @return the {@link Mutation} described by {@code header} or {@code null} if it is ignored
+   * @throws PeptideExtractorException if the header is not recognized or invalid
+   */
+  private static Mutation parseMutation(String header, FastaReader in, String source,
+      MutationCache mutationCache) throws PeptideExtractorException {
+    Mutation mutation =
+        mutationCache != null ? mutationCache.parse(header) : Mutations.parse(header);
+    if (mutation instanceof SilentSingleNucleotidePolymorphism) {
+      System.err.println("Ignoring silent mutation " + describe(header, in, source)
+          + ", because silent mutations don't cause an aminoacid sequence alternation");
+      return null;
+    } else if (mutation instanceof Termination) {
+      System.err.println("Ignoring terminating mutation " + describe(header, in, source)
+          + ", because terminating mutations don't cause an aminoacid sequence alternation");
+      return null;
+    } else if (mutation == null) {
+      throw new PeptideExtractorException("Unrecognized mutation header");
+    }
+    return mutation;
+  }
+
+  /**
+   * Extracts the peptide of {@code mutation} like
+   * {@link Mutation#extractFromProtein(CharSequence, int)}, but into the reusable {@code window}
+   * and {@code uniqueSolution}. If the protein is invalid, the failure is returned instead of
+   * thrown, so no exception is created for records that are ignored anyway.
+   *
+   * @param protein the protein, of which a prefix may have been skipped
+   * @return the {@link ValidationResult}
+   */
+  private static ValidationResult extractPeptide(String header, Mutation mutation,
+      OffsetProtein protein, PackedProtein window, StringBuilder uniqueSolution,
+      PeptideConsumer consumer, int enclosing) throws IOException {
+    ValidationResult result = mutation.checkProtein(protein.asSequence());
+    if (!result.isValid()) {
+      return result;
+    }
+    int begin = mutation.getWindowBegin(enclosing);
+    int end = mutation.getWindowEnd(protein.length(), enclosing);
+    PackedProtein output = protein.subSequence(begin, end, window);
+    uniqueSolution.setLength(0);
+    mutation.appendUniqueSolution(output, uniqueSolution);
+    consumer.accept(header, mutation.getType(), mutation.getMutationIndex(), output,
+        uniqueSolution.toString());
+    return result;
+  }
+
+  private static void handleError(PeptideExtractorException ex, String description,
+      PeptideExtractorParameter params) throws PeptideExtractorException {
+    if (params.isIgnoreErrors()) {
+      System.err.println(
+          "Ignoring mutation " + description + " due to: " + ex.getLocalizedMessage());
+    } else {
+      throw new PeptideExtractorException(
+          "Error at mutation " + description + ": " + ex.getLocalizedMessage(), ex);
+    }
+  }
+
+  /**
+   * @return the {@link ValidationResult} of the sequence that was last read from {@code in}, which
+   *         is only invalid if {@code in} {@link FastaReader#setNormalizeSequences(boolean)
+   *         normalizes} sequences
+   */
+  private static ValidationResult checkSequence(FastaReader in) {
+    int index = in.getInvalidResidueIndex();
+    if (index < 0) {
+      return ValidationResult.VALID;
+    }
+    return ValidationResult.invalidResidue(index + 1, in.getInvalidResidue());
+  }
+
+  /**
+   * Like {@link #handleError(PeptideExtractorException, String, PeptideExtractorParameter)}, but
+   * only creates the {@link ValidationException} if the error is not ignored.
+   */
+  private static void handleInvalid(ValidationResult result, String description,
+      PeptideExtractorParameter params) throws PeptideExtractorException {
+    if (params.isIgnoreErrors()) {
+      System.err.println("Ignoring mutation " + description + " due to: " + result.getMessage());
+    } else {
+      handleError(result.toException(), description, params);
+    }
+  }
+
+  private static String describe(String header, FastaReader in, String source) {
+    return describe(header, in.getHeaderLineNumber(), source);
+  }
+
+  private static String describe(String header, int headerLineNumber, String source) {
+    String description = header + " in line " + headerLineNumber;
+    return source != null ? description + " of " + source : description;
   }
 }
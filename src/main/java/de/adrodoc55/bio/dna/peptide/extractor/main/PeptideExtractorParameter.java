@@ -41,11 +41,32 @@
  */
 package de.adrodoc55.bio.dna.peptide.extractor.main;
 
+import static java.util.stream.Collectors.toList;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.Range;
+
+import de.adrodoc55.bio.dna.FastaConstants;
+import de.adrodoc55.bio.dna.fasta.FastaIndex;
+import de.adrodoc55.bio.dna.fasta.FastaReaders;
+import de.adrodoc55.bio.dna.peptide.extractor.dedupe.DedupeMode;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.CachePolicy;
+import de.adrodoc55.bio.dna.peptide.extractor.output.OutputFormat;
+import de.adrodoc55.bio.dna.peptide.extractor.output.Partitioning;
 
 /**
  * @author Adrodoc55
@@ -55,10 +76,13 @@ public class PeptideExtractorParameter {
       description = "Print information about the commandline usage")
   private boolean help;
 
-  @Parameter(required = true, description = "<input-file>")
+  @Parameter(required = true,
+      description = "<input-files> Input files, directories, glob patterns (e.g. 'data/*.fa.gz') or"
+          + " '-' for the standard input")
   private List<File> input;
 
-  @Parameter(names = {"-o", "--output"}, required = true, description = "Specify the output file")
+  @Parameter(names = {"-o", "--output"},
+      description = "Specify the output file or '-' for the standard output")
   private File output;
 
   @Parameter(names = {"-e", "--enclosing"},
@@ -69,21 +93,188 @@ public class PeptideExtractorParameter {
       description = "Continue execution when an error occurs")
   private boolean ignoreErrors;
 
+  @Parameter(names = {"-t", "--threads"},
+      description = "The number of threads used to process multiple inputs or splits and to"
+          + " decompress BGZF input")
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  @Parameter(names = {"--build-index"},
+      description = "Build the record index (" + FastaIndex.SUFFIX + ") of each input and exit")
+  private boolean buildIndex;
+
+  @Parameter(names = {"--index"}, description = "Use the record index of each input (building it"
+      + " if it is missing or outdated) to split uncompressed inputs for parallel processing")
+  private boolean index;
+
+  @Parameter(names = {"--records"},
+      description = "Only process the records <from>-<to> (1 based, inclusive, e.g. '100-200',"
+          + " '100-' or '100'), implies --index")
+  private String records;
+
+  @Parameter(names = {"--checkpoint"}, description = "Periodically save a checkpoint"
+      + " (<output>.checkpoint) from which an interrupted extraction can be resumed")
+  private boolean checkpoint;
+
+  @Parameter(names = {"--checkpoint-interval"},
+      description = "The number of seconds between two checkpoints")
+  private long checkpointInterval = 300;
+
+  @Parameter(names = {"--resume"},
+      description = "Resume an interrupted extraction from its last checkpoint,"
+          + " implies --checkpoint")
+  private boolean resume;
+
+  @Parameter(names = {"--output-buffer-size"},
+      description = "The size in KiB of each buffer used to write the output")
+  private int outputBufferSize = 4096;
+
+  @Parameter(names = {"--output-buffers"},
+      description = "The number of output buffers that are written by a separate thread,"
+          + " 0 to write the output on the extracting thread")
+  private int outputBuffers = 2;
+
+  @Parameter(names = {"-f", "--format"},
+      description = "The output format: FASTA or COLUMNAR (a binary file that can be memory"
+          + " mapped)")
+  private OutputFormat format = OutputFormat.FASTA;
+
+  @Parameter(names = {"--line-width"}, description = "The maximum number of residues per line of"
+      + " FASTA output, 0 to write each peptide on a single line")
+  private int lineWidth = FastaConstants.MAX_LINE_LENGTH;
+
+  @Parameter(names = {"--shards"}, description = "The number of output files, named like the"
+      + " output with the index of the shard before the extension (e.g. 'peptides.0.fa')")
+  private int shards = 1;
+
+  @Parameter(names = {"--shard-by"}, description = "How peptides are distributed across shards:"
+      + " KEY (the hash of the unique solution) or GENE (the text before ':' in the header)")
+  private Partitioning partitioning = Partitioning.KEY;
+
+  @Parameter(names = {"--mutation-cache"}, description = "The number of parsed mutations that are"
+      + " cached by their HGVS notation (the text after the last ':' of the header), 0 to disable")
+  private int mutationCacheSize;
+
+  @Parameter(names = {"--mutation-cache-policy"}, description = "The eviction policy of the"
+      + " mutation cache: LRU or SOFT (LRU, but also evicted by the garbage collector)")
+  private CachePolicy mutationCachePolicy = CachePolicy.LRU;
+
+  @Parameter(names = {"--group-proteins"}, description = "Store each distinct protein sequence"
+      + " only once and extract the peptides of all its mutations together, writing them grouped"
+      + " by protein")
+  private boolean groupProteins;
+
+  @Parameter(names = {"--normalize-sequences"}, description = "Upper-case the sequences, remove"
+      + " whitespace within their lines and report characters other than letters, '*' and '-' as"
+      + " errors (only the part of a sequence that is read is checked)")
+  private boolean normalizeSequences;
+
+  @Parameter(names = {"--dedupe"}, description = "How duplicate peptides are removed: MEMORY or"
+      + " EXTERNAL (sorts the peptides on disk and writes them at the end, using at most --memory)")
+  private DedupeMode dedupe = DedupeMode.MEMORY;
+
+  @Parameter(names = {"--memory"},
+      description = "The number of MiB used to sort the peptides with --dedupe EXTERNAL")
+  private int memory = 1024;
+
+  @Parameter(names = {"--seen-index"}, description = "An index of the unique solutions written by"
+      + " previous runs, peptides found in it are not written again")
+  private File seenIndex;
+
+  @Parameter(names = {"--update-seen-index"}, description = "Add the unique solutions written by"
+      + " this run to --seen-index (creating it if it does not exist), replacing it atomically at"
+      + " the end of the run")
+  private boolean updateSeenIndex;
+
+  @Parameter(names = {"--collapse-distance"}, description = "Do not write peptides that differ"
+      + " from a written peptide of the same length in at most this many residues (1 or 2), but"
+      + " list them in <output>.collapsed.tsv, 0 to disable")
+  private int collapseDistance;
+
+  @Parameter(names = {"--convert"},
+      description = "Convert the columnar peptide files given as input into the output format")
+  private boolean convert;
+
   public boolean isHelp() {
     return help;
   }
 
-  public File getInput() throws ParameterException {
-    if (input.size() != 1) {
-      throw new ParameterException("Exactly one source file has to be specified");
+  /**
+   * Resolves the specified inputs in the order they were specified. Directories are searched
+   * recursively and glob patterns are matched against all files below the directory preceding the
+   * first wildcard. The files found in a directory or by a pattern are sorted by path. Hidden files
+   * and {@link FastaIndex index files} are skipped. The input {@code -} is returned as
+   * {@link FastaReaders#STDIN}.
+   *
+   * @return the input files
+   * @throws ParameterException if no input file could be found
+   */
+  public List<Path> getInputs() throws ParameterException {
+    List<Path> result = new ArrayList<>();
+    for (File file : input) {
+      String pattern = file.getPath();
+      if (STANDARD_STREAM.equals(pattern)) {
+        if (result.contains(FastaReaders.STDIN)) {
+          throw new ParameterException("The standard input can only be read once");
+        }
+        result.add(FastaReaders.STDIN);
+      } else if (GLOB_CHARS.matchesAnyOf(pattern)) {
+        result.addAll(findFiles(pattern));
+      } else if (file.isDirectory()) {
+        result.addAll(findFiles(file.toPath(), path -> true));
+      } else {
+        result.add(file.getAbsoluteFile().toPath());
+      }
+    }
+    if (result.isEmpty()) {
+      throw new ParameterException("No input file found");
+    }
+    return result;
+  }
+
+  private static final String STANDARD_STREAM = "-";
+  private static final CharMatcher GLOB_CHARS = CharMatcher.anyOf("*?[{");
+
+  private static List<Path> findFiles(String pattern) throws ParameterException {
+    int wildcard = GLOB_CHARS.indexIn(pattern);
+    int separator = pattern.lastIndexOf(File.separatorChar, wildcard);
+    Path base = Paths.get(separator < 0 ? "." : pattern.substring(0, separator + 1));
+    PathMatcher matcher = FileSystems.getDefault()
+        .getPathMatcher("glob:" + base.resolve(pattern.substring(separator + 1)));
+    return findFiles(base, matcher);
+  }
+
+  private static List<Path> findFiles(Path directory, PathMatcher matcher)
+      throws ParameterException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(Files::isRegularFile)//
+          .filter(matcher::matches)//
+          .filter(path -> !path.getFileName().toString().startsWith("."))//
+          .filter(path -> !isIndexFile(path))//
+          .map(Path::toAbsolutePath)//
+          .sorted()//
+          .collect(toList());
+    } catch (IOException | UncheckedIOException ex) {
+      throw new ParameterException(
+          "Failed to search " + directory + ": " + ex.getLocalizedMessage(), ex);
     }
-    return input.get(0).getAbsoluteFile();
   }
 
-  public File getOutput() {
+  private static boolean isIndexFile(Path path) {
+    String fileName = path.getFileName().toString();
+    return fileName.endsWith(FastaIndex.SUFFIX) || fileName.endsWith(FastaIndex.TMP_SUFFIX);
+  }
+
+  public File getOutput() throws ParameterException {
+    if (output == null) {
+      throw new ParameterException("The following option is required: -o, --output");
+    }
     return output;
   }
 
+  public boolean isStdout() {
+    return output != null && STANDARD_STREAM.equals(output.getPath());
+  }
+
   public int getEnclosing() {
     return enclosing;
   }
@@ -91,4 +282,145 @@ public class PeptideExtractorParameter {
   public boolean isIgnoreErrors() {
     return ignoreErrors;
   }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public boolean isBuildIndex() {
+    return buildIndex;
+  }
+
+  public boolean isIndex() {
+    return index;
+  }
+
+  /**
+   * @return the range of (1 based) record numbers to process or {@code null} to process all
+   * @throws ParameterException if the range is malformed
+   */
+  public Range<Integer> getRecords() throws ParameterException {
+    if (records == null) {
+      return null;
+    }
+    try {
+      int separator = records.indexOf('-');
+      if (separator < 0) {
+        return Range.singleton(Integer.parseInt(records.trim()));
+      }
+      String from = records.substring(0, separator).trim();
+      String to = records.substring(separator + 1).trim();
+      if (to.isEmpty()) {
+        return Range.atLeast(Integer.parseInt(from));
+      }
+      return Range.closed(Integer.parseInt(from), Integer.parseInt(to));
+    } catch (IllegalArgumentException ex) {
+      throw new ParameterException("Invalid record range '" + records + "'", ex);
+    }
+  }
+
+  public boolean isCheckpoint() {
+    return checkpoint || resume;
+  }
+
+  public long getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public boolean isResume() {
+    return resume;
+  }
+
+  public int getOutputBufferSize() {
+    if (outputBufferSize < 1 || outputBufferSize > Integer.MAX_VALUE >> 10) {
+      throw new ParameterException("The output buffer size must be between 1 and "
+          + (Integer.MAX_VALUE >> 10) + " KiB");
+    }
+    return outputBufferSize << 10;
+  }
+
+  public int getOutputBuffers() {
+    if (outputBuffers == 1 || outputBuffers < 0) {
+      throw new ParameterException("At least two output buffers are required, or 0 to disable"
+          + " asynchronous output");
+    }
+    return outputBuffers;
+  }
+
+  public OutputFormat getFormat() {
+    return format;
+  }
+
+  public int getLineWidth() {
+    if (lineWidth < 0) {
+      throw new ParameterException("The line width must not be negative");
+    }
+    return lineWidth;
+  }
+
+  public boolean isConvert() {
+    return convert;
+  }
+
+  public int getShards() {
+    if (shards < 1) {
+      throw new ParameterException("At least one shard is required");
+    }
+    return shards;
+  }
+
+  public Partitioning getPartitioning() {
+    return partitioning;
+  }
+
+  public int getMutationCacheSize() {
+    if (mutationCacheSize < 0) {
+      throw new ParameterException("The mutation cache size must not be negative");
+    }
+    return mutationCacheSize;
+  }
+
+  public CachePolicy getMutationCachePolicy() {
+    return mutationCachePolicy;
+  }
+
+  public boolean isGroupProteins() {
+    return groupProteins;
+  }
+
+  public boolean isNormalizeSequences() {
+    return normalizeSequences;
+  }
+
+  public DedupeMode getDedupe() {
+    return dedupe;
+  }
+
+  /**
+   * @return the number of bytes used to sort the peptides with {@link DedupeMode#EXTERNAL}
+   */
+  public long getMemory() {
+    if (memory < 1) {
+      throw new ParameterException("At least 1 MiB of memory is required");
+    }
+    return (long) memory << 20;
+  }
+
+  public File getSeenIndex() {
+    if (updateSeenIndex && seenIndex == null) {
+      throw new ParameterException("--update-seen-index requires --seen-index");
+    }
+    return seenIndex;
+  }
+
+  public boolean isUpdateSeenIndex() {
+    return updateSeenIndex;
+  }
+
+  public int getCollapseDistance() {
+    if (collapseDistance < 0 || collapseDistance > 2) {
+      throw new ParameterException("The collapse distance must be 0, 1 or 2");
+    }
+    return collapseDistance;
+  }
 }
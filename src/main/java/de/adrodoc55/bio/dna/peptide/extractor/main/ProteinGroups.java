@@ -0,0 +1,142 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.HashCode;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutation;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationBatch;
+
+/**
+ * Stores each distinct protein sequence once, addressed by its
+ * {@link PackedProtein#fingerprint() fingerprint}, together with the mutations of all records that
+ * refer to it. So memory scales with the number of distinct sequences rather than with the number
+ * of records. The records are stored as parallel arrays and their mutations in a
+ * {@link MutationBatch}, so each record only costs its header and a few primitive values.
+ *
+ * @author Adrodoc55
+ */
+class ProteinGroups {
+  private final Map<HashCode, Integer> proteinIds = new HashMap<>();
+  private final List<PackedProtein> proteins = new ArrayList<>();
+  private final MutationBatch mutations = new MutationBatch();
+  private String[] headers = new String[1024];
+  private int[] headerLineNumbers = new int[1024];
+  private int[] recordProteinIds = new int[1024];
+
+  /**
+   * Adds a record. {@code protein} is only copied if its sequence did not occur before.
+   *
+   * @param protein the entire sequence of the record
+   * @param header
+   * @param headerLineNumber
+   * @param mutation
+   */
+  public void add(PackedProtein protein, String header, int headerLineNumber, Mutation mutation) {
+    HashCode fingerprint = protein.fingerprint();
+    Integer proteinId = proteinIds.get(fingerprint);
+    if (proteinId == null) {
+      proteinId = proteins.size();
+      proteinIds.put(fingerprint, proteinId);
+      proteins.add(protein.copy());
+    }
+    int record = mutations.add(mutation);
+    if (record == headers.length) {
+      headers = Arrays.copyOf(headers, 2 * record);
+      headerLineNumbers = Arrays.copyOf(headerLineNumbers, 2 * record);
+      recordProteinIds = Arrays.copyOf(recordProteinIds, 2 * record);
+    }
+    headers[record] = header;
+    headerLineNumbers[record] = headerLineNumber;
+    recordProteinIds[record] = proteinId;
+  }
+
+  /**
+   * @return the number of records
+   */
+  public int size() {
+    return mutations.size();
+  }
+
+  /**
+   * @return the indices of all records, sorted by the first occurrence of their protein and then by
+   *         input order
+   */
+  public int[] getRecordsByProtein() {
+    int size = size();
+    int[] starts = new int[proteins.size() + 1];
+    for (int record = 0; record < size; record++) {
+      starts[recordProteinIds[record] + 1]++;
+    }
+    for (int proteinId = 0; proteinId < proteins.size(); proteinId++) {
+      starts[proteinId + 1] += starts[proteinId];
+    }
+    int[] result = new int[size];
+    for (int record = 0; record < size; record++) {
+      result[starts[recordProteinIds[record]]++] = record;
+    }
+    return result;
+  }
+
+  public MutationBatch getMutations() {
+    return mutations;
+  }
+
+  public PackedProtein getProtein(int record) {
+    return proteins.get(recordProteinIds[record]);
+  }
+
+  public String getHeader(int record) {
+    return headers[record];
+  }
+
+  public int getHeaderLineNumber(int record) {
+    return headerLineNumbers[record];
+  }
+}
@@ -65,6 +65,36 @@ public class Deletion implements Mutation {
     }
   }
 
+  /**
+   * Parses {@code p.([A-Za-z]{3})(\d+)del} ignoring the case of {@code del}.
+   */
+  public static class Parser implements MutationParser {
+    @Override
+    public char getCoordinateSystem() {
+      return 'p';
+    }
+
+    @Override
+    public boolean isRange() {
+      return false;
+    }
+
+    @Override
+    public String getKeyword() {
+      return "del";
+    }
+
+    @Override
+    public Deletion parse(HgvsNotation notation) throws UnknownAminoAcidException {
+      if (notation.getChangeLength() != 3) {
+        return null;
+      }
+      AminoAcid nativeAmino = notation.getFirstAmino();
+      int mutationIndex = notation.getFirstNumber();
+      return new Deletion(nativeAmino, mutationIndex);
+    }
+  }
+
   private final AminoAcid nativeAmino;
   private final int mutationIndex;
 
@@ -77,24 +107,49 @@ public class Deletion implements Mutation {
     return nativeAmino;
   }
 
+  @Override
   public int getMutationIndex() {
     return mutationIndex;
   }
 
+  @Override
+  public MutationType getType() {
+    return MutationType.DELETION;
+  }
+
   @Override
   public CharSequence extractFromProtein(CharSequence protein, int enclosing)
       throws ValidationException {
     validateProtein(protein);
-    int beginIndex = Math.max(0, mutationIndex - 1 - enclosing);
-    int endIndex = Math.min(protein.length(), mutationIndex - 1 + enclosing);
-    return protein.subSequence(beginIndex, endIndex);
+    return protein.subSequence(getWindowBegin(enclosing),
+        getWindowEnd(protein.length(), enclosing));
+  }
+
+  @Override
+  public int getWindowBegin(int enclosing) {
+    return Math.max(0, mutationIndex - 1 - enclosing);
+  }
+
+  @Override
+  public int getWindowEnd(int proteinLength, int enclosing) {
+    return Math.min(proteinLength, mutationIndex - 1 + enclosing);
   }
 
   @Override
   public void validateProtein(CharSequence protein) throws ValidationException {}
 
+  @Override
+  public int getRequiredLength(int enclosing) {
+    return mutationIndex - 1 + enclosing;
+  }
+
   @Override
   public String getUniqueSolution(CharSequence output) {
     return nativeAmino.getCharCode() + "-DEL-" + output;
   }
+
+  @Override
+  public void appendUniqueSolution(CharSequence output, StringBuilder sb) {
+    sb.append(nativeAmino.getCharCode()).append("-DEL-").append(output);
+  }
 }
@@ -0,0 +1,216 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+import de.adrodoc55.bio.dna.AminoAcid;
+import de.adrodoc55.bio.dna.peptide.extractor.UnknownAminoAcidException;
+
+/**
+ * The tokens of an HGVS notation like {@code p.Ala12_Gly13insVal}: the coordinate system
+ * ({@code p}), one or two positions ({@code Ala12} and {@code Gly13}) and the change
+ * ({@code insVal}). In the coordinate system {@code p} a position is a 3 letter code followed by a
+ * number, in all other coordinate systems it is just a number. Tokens are not copied out of the
+ * header.
+ *
+ * @author Adrodoc55
+ */
+public class HgvsNotation {
+  private final String header;
+  private final int begin;
+  private final int firstAmino;
+  private final int firstNumberBegin;
+  private final int firstNumberEnd;
+  private final int secondAmino;
+  private final int secondNumberBegin;
+  private final int changeBegin;
+  private final int end;
+
+  /**
+   * All arguments except for the header and the coordinate system are indices in the header. The
+   * index of an aminoacid is -1 if the coordinate system is not {@code p}, the index of the second
+   * number is -1 if there is only one position. The second number ends at {@code changeBegin}.
+   */
+  HgvsNotation(String header, int begin, int firstAmino, int firstNumberBegin, int firstNumberEnd,
+      int secondAmino, int secondNumberBegin, int changeBegin, int end) {
+    this.header = header;
+    this.begin = begin;
+    this.firstAmino = firstAmino;
+    this.firstNumberBegin = firstNumberBegin;
+    this.firstNumberEnd = firstNumberEnd;
+    this.secondAmino = secondAmino;
+    this.secondNumberBegin = secondNumberBegin;
+    this.changeBegin = changeBegin;
+    this.end = end;
+  }
+
+  /**
+   * @return the FASTA header including the leading {@code '>'}
+   */
+  public String getHeader() {
+    return header;
+  }
+
+  public char getCoordinateSystem() {
+    return header.charAt(begin);
+  }
+
+  /**
+   * @return whether this notation has a second position
+   */
+  public boolean isRange() {
+    return secondNumberBegin >= 0;
+  }
+
+  /**
+   * @return the aminoacid of the first position
+   * @throws UnknownAminoAcidException if the 3 letter code is unknown
+   */
+  public AminoAcid getFirstAmino() throws UnknownAminoAcidException {
+    return aminoAcid(firstAmino);
+  }
+
+  /**
+   * @return the number of the first position
+   * @throws NumberFormatException if the number does not fit into an {@code int}
+   */
+  public int getFirstNumber() throws NumberFormatException {
+    return parseInt(firstNumberBegin, firstNumberEnd);
+  }
+
+  /**
+   * @return the aminoacid of the second position
+   * @throws UnknownAminoAcidException if the 3 letter code is unknown
+   */
+  public AminoAcid getSecondAmino() throws UnknownAminoAcidException {
+    checkRange();
+    return aminoAcid(secondAmino);
+  }
+
+  /**
+   * @return the number of the second position
+   * @throws NumberFormatException if the number does not fit into an {@code int}
+   */
+  public int getSecondNumber() throws NumberFormatException {
+    checkRange();
+    return parseInt(secondNumberBegin, changeBegin);
+  }
+
+  private void checkRange() {
+    if (!isRange()) {
+      throw new IllegalStateException("The notation has only one position");
+    }
+  }
+
+  /**
+   * @return the length of the change
+   */
+  public int getChangeLength() {
+    return end - changeBegin;
+  }
+
+  /**
+   * @param index the index in the change
+   * @return the character
+   */
+  public char getChangeChar(int index) {
+    return header.charAt(changeBegin + index);
+  }
+
+  /**
+   * @param prefix
+   * @return whether the change starts with {@code prefix} (case sensitive)
+   */
+  public boolean changeStartsWith(String prefix) {
+    return getChangeLength() >= prefix.length() && header.startsWith(prefix, changeBegin);
+  }
+
+  /**
+   * @param from the first index in the change (inclusive)
+   * @param to the last index in the change (exclusive)
+   * @return whether all characters from {@code from} to {@code to} are ASCII letters
+   */
+  public boolean isChangeLetters(int from, int to) {
+    return HgvsParser.isLetters(header, changeBegin + from, changeBegin + to);
+  }
+
+  /**
+   * @param index the index in the change of a 3 letter code consisting of ASCII letters
+   * @return the aminoacid
+   * @throws UnknownAminoAcidException if the 3 letter code is unknown
+   */
+  public AminoAcid getChangeAmino(int index) throws UnknownAminoAcidException {
+    return aminoAcid(changeBegin + index);
+  }
+
+  private AminoAcid aminoAcid(int begin) throws UnknownAminoAcidException {
+    if (begin < 0) {
+      throw new IllegalStateException(
+          "Positions in the coordinate system " + getCoordinateSystem() + " have no aminoacid");
+    }
+    AminoAcid result = AminoAcid.lookup3LetterCode(header, begin);
+    if (result == null) {
+      // Throws the appropriate exception
+      return AminoAcid.from3LetterCode(header.substring(begin, begin + 3));
+    }
+    return result;
+  }
+
+  /**
+   * Parses the digits from {@code begin} to {@code end}. On overflow this throws the same
+   * {@link NumberFormatException} as {@link Integer#parseInt(String)}.
+   */
+  private int parseInt(int begin, int end) {
+    long value = 0;
+    for (int i = begin; i < end; i++) {
+      value = 10 * value + (header.charAt(i) - '0');
+      if (value > Integer.MAX_VALUE) {
+        return Integer.parseInt(header.substring(begin, end));
+      }
+    }
+    return (int) value;
+  }
+
+  @Override
+  public String toString() {
+    return header.substring(begin, end);
+  }
+}
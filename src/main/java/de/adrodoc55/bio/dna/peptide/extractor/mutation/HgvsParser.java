@@ -0,0 +1,208 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+import java.util.ServiceLoader;
+
+import de.adrodoc55.bio.dna.peptide.extractor.PeptideExtractorException;
+
+/**
+ * Parses the HGVS notation at the end of a FASTA header. The notation is tokenized in a single pass
+ * into an {@link HgvsNotation} which is then routed to at most one {@link MutationParser}: the one
+ * registered for its coordinate system and number of positions with the longest keyword that its
+ * change starts with. So the cost of parsing does not grow with the number of registered parsers.
+ * <p>
+ * Like the {@code PATTERN}s of the {@link Mutation} implementations, the notation starts after the
+ * last {@code :} of the header and may only be followed by a single line terminator. With the
+ * built-in parsers this accepts and rejects exactly the same headers as the patterns when applied
+ * in the order of {@link Mutations#parse(String)} before the parsers were introduced.
+ *
+ * @author Adrodoc55
+ */
+class HgvsParser {
+  /**
+   * The parsers indexed by coordinate system and whether the notation is a range.
+   */
+  private static final KeywordTrie[][] PARSERS = new KeywordTrie[128][2];
+
+  static {
+    for (MutationParser parser : ServiceLoader.load(MutationParser.class,
+        MutationParser.class.getClassLoader())) {
+      char coordinateSystem = parser.getCoordinateSystem();
+      if (coordinateSystem >= PARSERS.length) {
+        throw new IllegalArgumentException(parser.getClass().getName()
+            + " has the non ASCII coordinate system " + coordinateSystem);
+      }
+      KeywordTrie[] tries = PARSERS[coordinateSystem];
+      int range = parser.isRange() ? 1 : 0;
+      if (tries[range] == null) {
+        tries[range] = new KeywordTrie();
+      }
+      tries[range].put(parser.getKeyword(), parser);
+    }
+  }
+
+  /**
+   * @param header the FASTA header including the leading {@code '>'}
+   * @return the parsed {@link Mutation} or {@code null} if the header is not recognized
+   */
+  static Mutation parse(String header) throws PeptideExtractorException {
+    HgvsNotation notation = tokenize(header);
+    if (notation == null) {
+      return null;
+    }
+    char coordinateSystem = notation.getCoordinateSystem();
+    if (coordinateSystem >= PARSERS.length) {
+      return null;
+    }
+    KeywordTrie trie = PARSERS[coordinateSystem][notation.isRange() ? 1 : 0];
+    MutationParser parser = trie != null ? trie.get(notation) : null;
+    return parser != null ? parser.parse(notation) : null;
+  }
+
+  /**
+   * Returns the index of the HGVS notation in {@code header}. Only the characters from there on
+   * determine the result of {@link #parse(String)}.
+   *
+   * @param header the FASTA header including the leading {@code '>'}
+   * @return the index after the last {@code :} or -1 if the header can not be recognized
+   */
+  static int getNotationBegin(String header) {
+    if (header.isEmpty() || header.charAt(0) != '>') {
+      return -1;
+    }
+    int colon = header.lastIndexOf(':');
+    if (colon < 1) {
+      return -1;
+    }
+    for (int i = 1; i < colon; i++) {
+      if (isLineTerminator(header.charAt(i))) {
+        return -1;
+      }
+    }
+    return colon + 1;
+  }
+
+  /**
+   * Tokenizes {@code ([A-Za-z])\.(P)(?:_(P))?(.*)} where {@code P} is {@code [A-Za-z]{3}\d+} in
+   * the coordinate system {@code p} and {@code \d+} in all others.
+   *
+   * @return the notation or {@code null} if the header is not recognized
+   */
+  static HgvsNotation tokenize(String header) {
+    int begin = getNotationBegin(header);
+    if (begin < 0) {
+      return null;
+    }
+    int end = header.length();
+    if (end - begin >= 2 && header.charAt(end - 2) == '\r' && header.charAt(end - 1) == '\n') {
+      end -= 2;
+    } else if (end > begin && isLineTerminator(header.charAt(end - 1))) {
+      end--;
+    }
+    if (end - begin < 2 || !isLetter(header.charAt(begin)) || header.charAt(begin + 1) != '.') {
+      return null;
+    }
+    boolean amino = header.charAt(begin) == 'p';
+    int firstAmino = amino ? begin + 2 : -1;
+    int firstNumberBegin = skipAmino(header, firstAmino, begin + 2, end);
+    int firstNumberEnd = skipDigits(header, firstNumberBegin, end);
+    if (firstNumberEnd == firstNumberBegin) {
+      return null;
+    }
+    if (firstNumberEnd == end || header.charAt(firstNumberEnd) != '_') {
+      return new HgvsNotation(header, begin, firstAmino, firstNumberBegin, firstNumberEnd, -1, -1,
+          firstNumberEnd, end);
+    }
+    int secondAmino = amino ? firstNumberEnd + 1 : -1;
+    int secondNumberBegin = skipAmino(header, secondAmino, firstNumberEnd + 1, end);
+    int secondNumberEnd = skipDigits(header, secondNumberBegin, end);
+    if (secondNumberEnd == secondNumberBegin) {
+      return null;
+    }
+    return new HgvsNotation(header, begin, firstAmino, firstNumberBegin, firstNumberEnd,
+        secondAmino, secondNumberBegin, secondNumberEnd, end);
+  }
+
+  /**
+   * @param amino the index of the 3 letter code or -1 if there is none
+   * @param begin the index of the position
+   * @return the index after the 3 letter code or {@code end} if it is malformed
+   */
+  private static int skipAmino(String s, int amino, int begin, int end) {
+    if (amino < 0) {
+      return begin;
+    }
+    if (amino + 3 > end || !isLetters(s, amino, amino + 3)) {
+      return end;
+    }
+    return amino + 3;
+  }
+
+  /**
+   * The characters that {@code .} does not match and that {@code $} may precede.
+   */
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+  }
+
+  static boolean isLetters(String s, int begin, int end) {
+    for (int i = begin; i < end; i++) {
+      if (!isLetter(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int skipDigits(String s, int begin, int end) {
+    int i = begin;
+    while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
+  }
+}
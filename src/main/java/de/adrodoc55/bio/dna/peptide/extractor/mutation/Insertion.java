@@ -41,8 +41,8 @@
  */
 package de.adrodoc55.bio.dna.peptide.extractor.mutation;
 
-import static de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutations.checkAmino;
 import static de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutations.checkValid;
+import static de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutations.validateAmino;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -90,12 +90,60 @@ public class Insertion implements Mutation {
     }
   }
 
+  /**
+   * Parses {@code p.([A-Za-z]{3})(\d+)_([A-Za-z]{3})(\d+)ins((?:[A-Za-z]{3})+)}.
+   */
+  public static class Parser implements MutationParser {
+    private static final String KEYWORD = "ins";
+
+    @Override
+    public char getCoordinateSystem() {
+      return 'p';
+    }
+
+    @Override
+    public boolean isRange() {
+      return true;
+    }
+
+    @Override
+    public String getKeyword() {
+      return KEYWORD;
+    }
+
+    @Override
+    public Insertion parse(HgvsNotation notation)
+        throws ValidationException, UnknownAminoAcidException {
+      int length = notation.getChangeLength();
+      int insertedLength = length - KEYWORD.length();
+      if (insertedLength <= 0 || insertedLength % 3 != 0 || !notation.changeStartsWith(KEYWORD)
+          || !notation.isChangeLetters(KEYWORD.length(), length)) {
+        return null;
+      }
+      AminoAcid aminoBeforeInsertion = notation.getFirstAmino();
+      int indexBeforeInsertion = notation.getFirstNumber();
+      AminoAcid aminoAfterInsertion = notation.getSecondAmino();
+      int indexAfterInsertion = notation.getSecondNumber();
+
+      checkValid(indexAfterInsertion == indexBeforeInsertion + 1,
+          "Expected index after insertion (" + indexAfterInsertion
+              + ") to be 1 greater than index before insertion (" + indexBeforeInsertion + ")");
+
+      List<AminoAcid> insertedAminos = new ArrayList<>(insertedLength / 3);
+      for (int i = KEYWORD.length(); i < length; i += 3) {
+        insertedAminos.add(notation.getChangeAmino(i));
+      }
+      return new Insertion(indexBeforeInsertion, aminoBeforeInsertion, aminoAfterInsertion,
+          insertedAminos);
+    }
+  }
+
   private final int indexBeforeInsertion;
   private final AminoAcid aminoBeforeInsertion;
   private final AminoAcid aminoAfterInsertion;
   private final ImmutableList<AminoAcid> insertedAminos;
 
-  private Insertion(int indexBeforeInsertion, AminoAcid aminoBeforeInsertion,
+  Insertion(int indexBeforeInsertion, AminoAcid aminoBeforeInsertion,
       AminoAcid aminoAfterInsertion, Iterable<? extends AminoAcid> insertedAminos) {
     this.indexBeforeInsertion = indexBeforeInsertion;
     this.aminoBeforeInsertion = aminoBeforeInsertion;
@@ -107,6 +155,14 @@ public class Insertion implements Mutation {
     return indexBeforeInsertion;
   }
 
+  /**
+   * @return the index of the first inserted amino acid
+   */
+  @Override
+  public int getMutationIndex() {
+    return indexBeforeInsertion + 1;
+  }
+
   public AminoAcid getAminoBeforeInsertion() {
     return aminoBeforeInsertion;
   }
@@ -123,28 +179,69 @@ public class Insertion implements Mutation {
     return insertedAminos;
   }
 
+  @Override
+  public MutationType getType() {
+    return MutationType.INSERTION;
+  }
+
   @Override
   public CharSequence extractFromProtein(CharSequence protein, int enclosing)
       throws ValidationException {
     validateProtein(protein);
-    int beginIndex = Math.max(0, getIndexBeforeInsertion() - enclosing);
-    int endIndex = Math.min(protein.length(), getIndexAfterInsertion() - 1 + enclosing);
-    return protein.subSequence(beginIndex, endIndex);
+    return protein.subSequence(getWindowBegin(enclosing),
+        getWindowEnd(protein.length(), enclosing));
+  }
+
+  @Override
+  public int getWindowBegin(int enclosing) {
+    return Math.max(0, getIndexBeforeInsertion() - enclosing);
+  }
+
+  @Override
+  public int getWindowEnd(int proteinLength, int enclosing) {
+    return Math.min(proteinLength, getIndexAfterInsertion() - 1 + enclosing);
   }
 
   @Override
   public void validateProtein(CharSequence protein) throws ValidationException {
-    checkAmino(protein, indexBeforeInsertion, aminoBeforeInsertion);
+    checkProtein(protein).throwIfInvalid();
+  }
+
+  @Override
+  public ValidationResult checkProtein(CharSequence protein) {
+    ValidationResult result = validateAmino(protein, indexBeforeInsertion, aminoBeforeInsertion);
     int insertionSize = insertedAminos.size();
     int firstMutationIndex = indexBeforeInsertion + 1;
-    for (int i = 0; i < insertionSize; i++) {
-      checkAmino(protein, firstMutationIndex + i, insertedAminos.get(i));
+    for (int i = 0; i < insertionSize && result.isValid(); i++) {
+      result = validateAmino(protein, firstMutationIndex + i, insertedAminos.get(i));
+    }
+    if (result.isValid()) {
+      result = validateAmino(protein, getIndexAfterInsertion(), aminoAfterInsertion);
     }
-    checkAmino(protein, getIndexAfterInsertion(), aminoAfterInsertion);
+    return result;
+  }
+
+  @Override
+  public int getRequiredLength(int enclosing) {
+    return getIndexAfterInsertion() - 1 + Math.max(1, enclosing);
+  }
+
+  /**
+   * The aminoacid before the insertion is validated, so it is required even if it is not
+   * extracted.
+   */
+  @Override
+  public int getRequiredBegin(int enclosing) {
+    return Math.max(0, Math.min(getWindowBegin(enclosing), indexBeforeInsertion - 1));
   }
 
   @Override
   public String getUniqueSolution(CharSequence output) {
     return "INS-" + output;
   }
+
+  @Override
+  public void appendUniqueSolution(CharSequence output, StringBuilder sb) {
+    sb.append("INS-").append(output);
+  }
 }
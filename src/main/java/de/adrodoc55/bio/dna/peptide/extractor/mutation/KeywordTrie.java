@@ -0,0 +1,113 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+/**
+ * Maps ASCII keywords case insensitively to {@link MutationParser}s and finds the parser of the
+ * longest keyword that a change starts with. A lookup only inspects as many characters as the
+ * longest keyword has, regardless of how many keywords there are.
+ *
+ * @author Adrodoc55
+ */
+class KeywordTrie {
+  private static class Node {
+    private final Node[] children = new Node[128];
+    private MutationParser parser;
+  }
+
+  private final Node root = new Node();
+
+  /**
+   * @param keyword an ASCII keyword, possibly empty
+   * @param parser
+   * @throws IllegalArgumentException if the keyword is not ASCII or already has a parser
+   */
+  void put(String keyword, MutationParser parser) throws IllegalArgumentException {
+    Node node = root;
+    for (int i = 0; i < keyword.length(); i++) {
+      int c = index(keyword.charAt(i));
+      if (c < 0) {
+        throw new IllegalArgumentException("The keyword '" + keyword + "' is not ASCII");
+      }
+      if (node.children[c] == null) {
+        node.children[c] = new Node();
+      }
+      node = node.children[c];
+    }
+    if (node.parser != null) {
+      throw new IllegalArgumentException("Both " + node.parser.getClass().getName() + " and "
+          + parser.getClass().getName() + " parse the keyword '" + keyword + "'");
+    }
+    node.parser = parser;
+  }
+
+  /**
+   * @param notation
+   * @return the parser of the longest keyword that the change of {@code notation} starts with or
+   *         {@code null} if there is none
+   */
+  MutationParser get(HgvsNotation notation) {
+    Node node = root;
+    MutationParser result = root.parser;
+    int length = notation.getChangeLength();
+    for (int i = 0; i < length; i++) {
+      int c = index(notation.getChangeChar(i));
+      if (c < 0 || (node = node.children[c]) == null) {
+        break;
+      }
+      if (node.parser != null) {
+        result = node.parser;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the index of {@code c} in {@link Node#children} or -1 if {@code c} is not ASCII
+   */
+  private static int index(char c) {
+    if (c >= 'A' && c <= 'Z') {
+      return c + ('a' - 'A');
+    }
+    return c < 128 ? c : -1;
+  }
+}
@@ -59,5 +59,80 @@ public interface Mutation {
 
   void validateProtein(CharSequence protein) throws ValidationException;
 
+  /**
+   * Like {@link #validateProtein(CharSequence)}, but returns the outcome instead of throwing a
+   * {@link ValidationException}, which is much cheaper for proteins that fail the validation.
+   *
+   * @param protein
+   * @return the {@link ValidationResult}
+   */
+  default ValidationResult checkProtein(CharSequence protein) {
+    try {
+      validateProtein(protein);
+      return ValidationResult.VALID;
+    } catch (ValidationException ex) {
+      return ValidationResult.failed(ex);
+    }
+  }
+
+  /**
+   * Returns the index of the first aminoacid that {@link #extractFromProtein(CharSequence, int)}
+   * extracts without extracting anything, so the caller can reuse its own window or buffer.
+   *
+   * @param enclosing the number of characters before and after the mutation that are extraced
+   * @return the (0 based, inclusive) begin index of the extracted window
+   */
+  int getWindowBegin(int enclosing);
+
+  /**
+   * Like {@link #getWindowBegin(int)}, but returns the end of the window.
+   *
+   * @param proteinLength the length of the protein
+   * @param enclosing the number of characters before and after the mutation that are extraced
+   * @return the (0 based, exclusive) end index of the extracted window
+   */
+  int getWindowEnd(int proteinLength, int enclosing);
+
+  /**
+   * Returns the number of leading aminoacids of a protein that
+   * {@link #extractFromProtein(CharSequence, int)} accesses, so the rest of the protein does not
+   * need to be read.
+   *
+   * @param enclosing the number of characters before and after the mutation that are extraced
+   * @return the length of the required prefix of the protein
+   */
+  int getRequiredLength(int enclosing);
+
+  /**
+   * Returns the index of the first aminoacid of a protein that
+   * {@link #extractFromProtein(CharSequence, int)} accesses, so the aminoacids before it do not
+   * need to be read. By default this is the begin of the window or the mutated aminoacid,
+   * whichever comes first.
+   *
+   * @param enclosing the number of characters before and after the mutation that are extraced
+   * @return the (0 based) index of the first required aminoacid
+   */
+  default int getRequiredBegin(int enclosing) {
+    return Math.max(0, Math.min(getWindowBegin(enclosing), getMutationIndex() - 1));
+  }
+
+  MutationType getType();
+
+  /**
+   * @return the (1 based) index of the first position affected by this mutation
+   */
+  int getMutationIndex();
+
   String getUniqueSolution(CharSequence output);
+
+  /**
+   * Appends the same characters as {@link #getUniqueSolution(CharSequence)} to {@code sb} without
+   * creating intermediate {@link String}s.
+   *
+   * @param output the extracted peptide
+   * @param sb
+   */
+  default void appendUniqueSolution(CharSequence output, StringBuilder sb) {
+    sb.append(getUniqueSolution(output));
+  }
 }
@@ -0,0 +1,303 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+import static java.lang.Character.toUpperCase;
+
+import java.util.Arrays;
+
+import de.adrodoc55.bio.dna.AminoAcid;
+import de.adrodoc55.bio.dna.PackedProtein;
+
+/**
+ * Many {@link Mutation}s stored as parallel primitive arrays instead of one object per mutation.
+ * Each mutation is reduced to its type, position, the bounds of its window before the enclosing
+ * aminoacids are added and the aminoacids that {@link Mutation#validateProtein(CharSequence)}
+ * checks, which are stored in arrays shared by all mutations of the batch. So window computation
+ * and validation are tight loops over primitive arrays, without virtual calls.
+ * <p>
+ * Mutations of other types than the built-in ones are kept as objects and processed through the
+ * {@link Mutation} interface.
+ * <p>
+ * A batch is filled from {@link Mutation}s that were already parsed, it is not written by the
+ * parser itself. Parsing still allocates one object per header, unless a {@link MutationCache}
+ * shares it between equal headers. Batches are only useful where records are processed in bulk,
+ * like when grouping records by protein. When streaming, each record is extracted right after its
+ * header, so that only the required part of its sequence has to be read.
+ *
+ * @author Adrodoc55
+ */
+public class MutationBatch {
+  private static final AminoAcid[] AMINO_ACIDS = AminoAcid.values();
+
+  private int size;
+  private byte[] types;
+  private int[] positions;
+  private int[] windowBegins;
+  private int[] windowEnds;
+  private byte[] nativeAminos;
+  private Mutation[] others;
+
+  /**
+   * The checks of mutation {@code i} are stored from {@code checkOffsets[i]} to
+   * {@code checkOffsets[i + 1]}.
+   */
+  private int[] checkOffsets;
+  private int checkCount;
+  private int[] checkPositions;
+  private byte[] checkAminos;
+
+  public MutationBatch() {
+    this(1024);
+  }
+
+  /**
+   * @param capacity the initial number of mutations that can be added without growing
+   */
+  public MutationBatch(int capacity) {
+    capacity = Math.max(1, capacity);
+    types = new byte[capacity];
+    positions = new int[capacity];
+    windowBegins = new int[capacity];
+    windowEnds = new int[capacity];
+    nativeAminos = new byte[capacity];
+    others = new Mutation[capacity];
+    checkOffsets = new int[capacity + 1];
+    checkPositions = new int[capacity];
+    checkAminos = new byte[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Adds {@code mutation} to this batch. Built-in mutations are decomposed, so the object can be
+   * garbage collected.
+   *
+   * @param mutation the mutation to add
+   * @return the index of the mutation in this batch
+   */
+  public int add(Mutation mutation) {
+    if (size == types.length) {
+      grow();
+    }
+    int i = size;
+    types[i] = (byte) mutation.getType().ordinal();
+    positions[i] = mutation.getMutationIndex();
+    nativeAminos[i] = -1;
+    others[i] = null;
+    if (mutation instanceof SingleNucleotidePolymorphism) {
+      SingleNucleotidePolymorphism snp = (SingleNucleotidePolymorphism) mutation;
+      int mutationIndex = snp.getMutationIndex();
+      setWindow(i, mutationIndex - 1, mutationIndex);
+      addCheck(mutationIndex, snp.getMutatedAmino());
+    } else if (mutation instanceof Deletion) {
+      Deletion deletion = (Deletion) mutation;
+      setWindow(i, deletion.getMutationIndex() - 1, deletion.getMutationIndex() - 1);
+      nativeAminos[i] = (byte) deletion.getNaitveAmino().ordinal();
+    } else if (mutation instanceof Termination) {
+      Termination termination = (Termination) mutation;
+      setWindow(i, termination.getMutationIndex() - 1, termination.getMutationIndex() - 1);
+    } else if (mutation instanceof Insertion) {
+      Insertion insertion = (Insertion) mutation;
+      int indexBeforeInsertion = insertion.getIndexBeforeInsertion();
+      setWindow(i, indexBeforeInsertion, insertion.getIndexAfterInsertion() - 1);
+      addCheck(indexBeforeInsertion, insertion.getAminoBeforeInsertion());
+      int firstMutationIndex = indexBeforeInsertion + 1;
+      for (int k = 0; k < insertion.getInsertionAminos().size(); k++) {
+        addCheck(firstMutationIndex + k, insertion.getInsertionAminos().get(k));
+      }
+      addCheck(insertion.getIndexAfterInsertion(), insertion.getAminoAfterInsertion());
+    } else {
+      others[i] = mutation;
+    }
+    size++;
+    checkOffsets[size] = checkCount;
+    return i;
+  }
+
+  /**
+   * @param begin the begin index of the window without the enclosing aminoacids
+   * @param end the end index of the window without the enclosing aminoacids
+   */
+  private void setWindow(int i, int begin, int end) {
+    windowBegins[i] = begin;
+    windowEnds[i] = end;
+  }
+
+  private void addCheck(int mutationIndex, AminoAcid expected) {
+    if (checkCount == checkPositions.length) {
+      checkPositions = Arrays.copyOf(checkPositions, 2 * checkCount);
+      checkAminos = Arrays.copyOf(checkAminos, 2 * checkCount);
+    }
+    checkPositions[checkCount] = mutationIndex;
+    checkAminos[checkCount] = (byte) expected.ordinal();
+    checkCount++;
+  }
+
+  private void grow() {
+    int capacity = 2 * types.length;
+    types = Arrays.copyOf(types, capacity);
+    positions = Arrays.copyOf(positions, capacity);
+    windowBegins = Arrays.copyOf(windowBegins, capacity);
+    windowEnds = Arrays.copyOf(windowEnds, capacity);
+    nativeAminos = Arrays.copyOf(nativeAminos, capacity);
+    others = Arrays.copyOf(others, capacity);
+    checkOffsets = Arrays.copyOf(checkOffsets, capacity + 1);
+  }
+
+  public MutationType getType(int i) {
+    return MutationType.fromOrdinal(types[i]);
+  }
+
+  /**
+   * @see Mutation#getMutationIndex()
+   */
+  public int getMutationIndex(int i) {
+    return positions[i];
+  }
+
+  /**
+   * Computes the windows of the mutations {@code indices[from]} to {@code indices[to - 1]} in a
+   * protein of length {@code proteinLength}, like {@link Mutation#getWindowBegin(int)} and
+   * {@link Mutation#getWindowEnd(int, int)}.
+   *
+   * @param indices the indices of the mutations in this batch
+   * @param from the first index in {@code indices} (inclusive)
+   * @param to the last index in {@code indices} (exclusive)
+   * @param proteinLength
+   * @param enclosing
+   * @param begins receives the begin index of each window at the same index as in {@code indices}
+   * @param ends receives the end index of each window at the same index as in {@code indices}
+   */
+  public void computeWindows(int[] indices, int from, int to, int proteinLength, int enclosing,
+      int[] begins, int[] ends) {
+    for (int k = from; k < to; k++) {
+      int i = indices[k];
+      begins[k] = Math.max(0, windowBegins[i] - enclosing);
+      ends[k] = Math.min(proteinLength, windowEnds[i] + enclosing);
+    }
+    for (int k = from; k < to; k++) {
+      Mutation other = others[indices[k]];
+      if (other != null) {
+        begins[k] = other.getWindowBegin(enclosing);
+        ends[k] = other.getWindowEnd(proteinLength, enclosing);
+      }
+    }
+  }
+
+  /**
+   * Validates {@code protein} for mutation {@code i} like
+   * {@link Mutation#checkProtein(CharSequence)}.
+   *
+   * @param i the index of the mutation
+   * @param protein the protein
+   * @return the {@link ValidationResult}
+   */
+  public ValidationResult check(int i, CharSequence protein) {
+    if (others[i] != null) {
+      return others[i].checkProtein(protein);
+    }
+    int check = findFailedCheck(i, protein);
+    if (check < 0) {
+      return ValidationResult.VALID;
+    }
+    int mutationIndex = checkPositions[check];
+    char actualAmino = toUpperCase(protein.charAt(mutationIndex - 1));
+    char expectedAmino = AMINO_ACIDS[checkAminos[check]].getCharCode();
+    return ValidationResult.incorrectAmino(mutationIndex, expectedAmino, actualAmino);
+  }
+
+  /**
+   * @return the index of the first failed check of mutation {@code i} or -1 if all checks passed
+   */
+  private int findFailedCheck(int i, CharSequence protein) {
+    int end = checkOffsets[i + 1];
+    if (protein instanceof PackedProtein) {
+      PackedProtein packed = (PackedProtein) protein;
+      for (int check = checkOffsets[i]; check < end; check++) {
+        AminoAcid expected = AMINO_ACIDS[checkAminos[check]];
+        if (!packed.isAminoAcid(checkPositions[check] - 1, expected)
+            && toUpperCase(packed.charAt(checkPositions[check] - 1)) != expected.getCharCode()) {
+          return check;
+        }
+      }
+    } else {
+      for (int check = checkOffsets[i]; check < end; check++) {
+        char expected = AMINO_ACIDS[checkAminos[check]].getCharCode();
+        if (toUpperCase(protein.charAt(checkPositions[check] - 1)) != expected) {
+          return check;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Appends the key of the peptide {@code output} of mutation {@code i} to {@code sb}, like
+   * {@link Mutation#appendUniqueSolution(CharSequence, StringBuilder)}.
+   */
+  public void appendUniqueSolution(int i, CharSequence output, StringBuilder sb) {
+    if (others[i] != null) {
+      others[i].appendUniqueSolution(output, sb);
+      return;
+    }
+    switch (getType(i)) {
+      case SNP:
+        sb.append("SNP-");
+        break;
+      case INSERTION:
+        sb.append("INS-");
+        break;
+      case TERMINATION:
+        sb.append("TER-");
+        break;
+      case DELETION:
+        sb.append(AMINO_ACIDS[nativeAminos[i]].getCharCode()).append("-DEL-");
+        break;
+      default:
+        throw new IllegalStateException("Unexpected type " + getType(i));
+    }
+    sb.append(output);
+  }
+}
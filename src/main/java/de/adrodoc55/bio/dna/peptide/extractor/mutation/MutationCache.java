@@ -0,0 +1,112 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import de.adrodoc55.bio.dna.peptide.extractor.PeptideExtractorException;
+
+/**
+ * A bounded, thread safe cache for {@link Mutations#parse(String)}. The same protein change often
+ * appears in the headers of many samples and isoforms, which only differ before the last
+ * {@code :}. The cache is keyed by the HGVS notation after the last {@code :} and returns the same
+ * immutable {@link Mutation} instance for all of these headers.
+ * <p>
+ * Headers that are not recognized or cause an exception are not cached.
+ *
+ * @author Adrodoc55
+ */
+public class MutationCache {
+  private final Cache<String, Mutation> cache;
+
+  /**
+   * @param maximumSize the maximum number of cached mutations, 0 disables the cache
+   * @param policy the eviction policy
+   * @param concurrencyLevel the expected number of threads using the cache
+   */
+  public MutationCache(long maximumSize, CachePolicy policy, int concurrencyLevel) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()//
+        .maximumSize(maximumSize)//
+        .concurrencyLevel(Math.max(1, concurrencyLevel))//
+        .recordStats();
+    if (policy == CachePolicy.SOFT) {
+      builder.softValues();
+    }
+    cache = builder.build();
+  }
+
+  /**
+   * Like {@link Mutations#parse(String)}, but returns a cached instance if possible.
+   */
+  public Mutation parse(String header) throws PeptideExtractorException {
+    int begin = HgvsParser.getNotationBegin(header);
+    if (begin < 0) {
+      return null;
+    }
+    String notation = header.substring(begin);
+    Mutation result = cache.getIfPresent(notation);
+    if (result == null) {
+      result = HgvsParser.parse(header);
+      if (result != null) {
+        cache.put(notation, result);
+      }
+    }
+    return result;
+  }
+
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  /**
+   * @return the statistics of this cache, including the number of evictions
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+import de.adrodoc55.bio.dna.peptide.extractor.PeptideExtractorException;
+
+/**
+ * Parses one kind of HGVS notation into a {@link Mutation}. Implementations are loaded by a
+ * {@link java.util.ServiceLoader}, so they must be listed in
+ * {@code META-INF/services/<this interface>} and have a public no argument constructor.
+ * <p>
+ * Each header is routed to at most one parser: the one registered for the
+ * {@link #getCoordinateSystem() coordinate system} and {@link #isRange() form} of its notation
+ * with the longest {@link #getKeyword() keyword} that the change of the notation starts with.
+ *
+ * @author Adrodoc55
+ */
+public interface MutationParser {
+  /**
+   * @return the coordinate system of the notations parsed by this parser, for instance {@code 'p'}
+   *         for {@code p.Ala12Val}
+   */
+  char getCoordinateSystem();
+
+  /**
+   * @return whether the notations parsed by this parser start with a range of two positions, like
+   *         {@code p.Ala12_Gly13insVal}
+   */
+  boolean isRange();
+
+  /**
+   * Returns the keyword at the beginning of the change that identifies the notations parsed by this
+   * parser, like {@code del} or {@code ins}. Keywords are ASCII and matched case insensitively. The
+   * empty keyword is used for changes that do not start with any other keyword.
+   *
+   * @return the keyword
+   */
+  String getKeyword();
+
+  /**
+   * @param notation the tokenized notation
+   * @return the {@link Mutation} or {@code null} if the change is malformed
+   * @throws PeptideExtractorException if the notation is well formed, but invalid
+   */
+  Mutation parse(HgvsNotation notation) throws PeptideExtractorException;
+}
@@ -44,37 +44,23 @@ package de.adrodoc55.bio.dna.peptide.extractor.mutation;
 import static java.lang.Character.toUpperCase;
 
 import de.adrodoc55.bio.dna.AminoAcid;
-import de.adrodoc55.bio.dna.peptide.extractor.UnknownAminoAcidException;
-import de.adrodoc55.bio.dna.peptide.extractor.UnknownNucleotideException;
+import de.adrodoc55.bio.dna.PackedProtein;
+import de.adrodoc55.bio.dna.peptide.extractor.PeptideExtractorException;
 import de.adrodoc55.bio.dna.peptide.extractor.ValidationException;
 
 /**
  * @author Adrodoc55
  */
 public class Mutations {
-  public static Mutation parse(String header)
-      throws UnknownAminoAcidException, ValidationException, UnknownNucleotideException {
-    Mutation ssnp = SilentSingleNucleotidePolymorphism.parse(header);
-    if (ssnp != null) {
-      return ssnp;
-    }
-    Mutation termination = Termination.parse(header);
-    if (termination != null) {
-      return termination;
-    }
-    Mutation deletion = Deletion.parse(header);
-    if (deletion != null) {
-      return deletion;
-    }
-    Mutation insertion = Insertion.parse(header);
-    if (insertion != null) {
-      return insertion;
-    }
-    Mutation snp = SingleNucleotidePolymorphism.parse(header);
-    if (snp != null) {
-      return snp;
-    }
-    return null;
+  /**
+   * Parses the mutation described by the HGVS notation at the end of {@code header} with the
+   * registered {@link MutationParser}s.
+   *
+   * @param header a FASTA header
+   * @return the {@link Mutation} or {@code null} if the header is not recognized
+   */
+  public static Mutation parse(String header) throws PeptideExtractorException {
+    return HgvsParser.parse(header);
   }
 
   /**
@@ -86,10 +72,30 @@ public class Mutations {
    */
   public static void checkAmino(CharSequence protein, int mutationIndex, AminoAcid expected)
       throws ValidationException {
+    validateAmino(protein, mutationIndex, expected).throwIfInvalid();
+  }
+
+  /**
+   * Like {@link #checkAmino(CharSequence, int, AminoAcid)}, but returns the outcome instead of
+   * throwing an exception. Nothing is allocated if the aminoacid is correct.
+   *
+   * @param protein
+   * @param mutationIndex (1 based)
+   * @param expected
+   * @return the {@link ValidationResult}
+   */
+  public static ValidationResult validateAmino(CharSequence protein, int mutationIndex,
+      AminoAcid expected) {
+    if (protein instanceof PackedProtein
+        && ((PackedProtein) protein).isAminoAcid(mutationIndex - 1, expected)) {
+      return ValidationResult.VALID;
+    }
     char actualAmino = toUpperCase(protein.charAt(mutationIndex - 1));
     char expectedAmino = expected.getCharCode();
-    checkValid(actualAmino != expectedAmino, "Incorrect aminoacid at index " + mutationIndex
-        + "! Expected " + expectedAmino + " but got " + actualAmino);
+    if (actualAmino != expectedAmino) {
+      return ValidationResult.incorrectAmino(mutationIndex, expectedAmino, actualAmino);
+    }
+    return ValidationResult.VALID;
   }
 
   public static void checkValid(boolean b, String message) throws ValidationException {
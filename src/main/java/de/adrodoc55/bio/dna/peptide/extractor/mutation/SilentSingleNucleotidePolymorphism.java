@@ -69,6 +69,49 @@ public class SilentSingleNucleotidePolymorphism implements Mutation {
     }
   }
 
+  /**
+   * Parses {@code c.(\d+)([A-Za-z])>([A-Za-z])\(p\.=\)}, the default for coding changes.
+   */
+  public static class Parser implements MutationParser {
+    private static final String SUFFIX = "(p.=)";
+
+    @Override
+    public char getCoordinateSystem() {
+      return 'c';
+    }
+
+    @Override
+    public boolean isRange() {
+      return false;
+    }
+
+    @Override
+    public String getKeyword() {
+      return "";
+    }
+
+    @Override
+    public SilentSingleNucleotidePolymorphism parse(HgvsNotation notation)
+        throws UnknownNucleotideException {
+      if (notation.getChangeLength() != 3 + SUFFIX.length() //
+          || !notation.isChangeLetters(0, 1) //
+          || notation.getChangeChar(1) != '>' //
+          || !notation.isChangeLetters(2, 3)) {
+        return null;
+      }
+      for (int i = 0; i < SUFFIX.length(); i++) {
+        if (notation.getChangeChar(3 + i) != SUFFIX.charAt(i)) {
+          return null;
+        }
+      }
+      int mutationIndex = notation.getFirstNumber();
+      Nucleotide nativeNucleotide = Nucleotide.fromCharCode(notation.getChangeChar(0));
+      Nucleotide mutatedNucleotide = Nucleotide.fromCharCode(notation.getChangeChar(2));
+      return new SilentSingleNucleotidePolymorphism(mutationIndex, nativeNucleotide,
+          mutatedNucleotide);
+    }
+  }
+
   private final int mutationIndex;
   private final Nucleotide nativeNucleotide;
   private final Nucleotide mutatedNucleotide;
@@ -80,6 +123,7 @@ public class SilentSingleNucleotidePolymorphism implements Mutation {
     this.mutatedNucleotide = mutatedNucleotide;
   }
 
+  @Override
   public int getMutationIndex() {
     return mutationIndex;
   }
@@ -92,15 +136,40 @@ public class SilentSingleNucleotidePolymorphism implements Mutation {
     return mutatedNucleotide;
   }
 
+  @Override
+  public MutationType getType() {
+    return MutationType.SILENT_SNP;
+  }
+
   @Override
   public CharSequence extractFromProtein(CharSequence protein, int enclosing)
       throws ValidationException {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public int getWindowBegin(int enclosing) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int getWindowEnd(int proteinLength, int enclosing) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void validateProtein(CharSequence protein) throws ValidationException {}
 
+  @Override
+  public int getRequiredLength(int enclosing) {
+    return 0;
+  }
+
+  @Override
+  public int getRequiredBegin(int enclosing) {
+    return 0;
+  }
+
   @Override
   public String getUniqueSolution(CharSequence output) {
     throw new UnsupportedOperationException();
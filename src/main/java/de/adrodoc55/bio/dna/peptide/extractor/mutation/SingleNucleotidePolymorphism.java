@@ -41,7 +41,7 @@
  */
 package de.adrodoc55.bio.dna.peptide.extractor.mutation;
 
-import static de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutations.checkAmino;
+import static de.adrodoc55.bio.dna.peptide.extractor.mutation.Mutations.validateAmino;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -69,6 +69,39 @@ public class SingleNucleotidePolymorphism implements Mutation {
     }
   }
 
+  /**
+   * Parses {@code p.([A-Za-z]{3})(\d+)([A-Za-z]{3})}, the default for protein changes without a
+   * keyword.
+   */
+  public static class Parser implements MutationParser {
+    @Override
+    public char getCoordinateSystem() {
+      return 'p';
+    }
+
+    @Override
+    public boolean isRange() {
+      return false;
+    }
+
+    @Override
+    public String getKeyword() {
+      return "";
+    }
+
+    @Override
+    public SingleNucleotidePolymorphism parse(HgvsNotation notation)
+        throws UnknownAminoAcidException {
+      if (notation.getChangeLength() != 3 || !notation.isChangeLetters(0, 3)) {
+        return null;
+      }
+      AminoAcid nativeAmino = notation.getFirstAmino();
+      int mutationIndex = notation.getFirstNumber();
+      AminoAcid mutatedAmino = notation.getChangeAmino(0);
+      return new SingleNucleotidePolymorphism(nativeAmino, mutationIndex, mutatedAmino);
+    }
+  }
+
   private final AminoAcid nativeAmino;
   private final int mutationIndex;
   private final AminoAcid mutatedAmino;
@@ -84,6 +117,7 @@ public class SingleNucleotidePolymorphism implements Mutation {
     return nativeAmino;
   }
 
+  @Override
   public int getMutationIndex() {
     return mutationIndex;
   }
@@ -92,22 +126,51 @@ public class SingleNucleotidePolymorphism implements Mutation {
     return mutatedAmino;
   }
 
+  @Override
+  public MutationType getType() {
+    return MutationType.SNP;
+  }
+
   @Override
   public CharSequence extractFromProtein(CharSequence protein, int enclosing)
       throws ValidationException {
     validateProtein(protein);
-    int beginIndex = Math.max(0, mutationIndex - 1 - enclosing);
-    int endIndex = Math.min(protein.length(), mutationIndex + enclosing);
-    return protein.subSequence(beginIndex, endIndex);
+    return protein.subSequence(getWindowBegin(enclosing),
+        getWindowEnd(protein.length(), enclosing));
+  }
+
+  @Override
+  public int getWindowBegin(int enclosing) {
+    return Math.max(0, mutationIndex - 1 - enclosing);
+  }
+
+  @Override
+  public int getWindowEnd(int proteinLength, int enclosing) {
+    return Math.min(proteinLength, mutationIndex + enclosing);
   }
 
   @Override
   public void validateProtein(CharSequence protein) throws ValidationException {
-    checkAmino(protein, mutationIndex, mutatedAmino);
+    checkProtein(protein).throwIfInvalid();
+  }
+
+  @Override
+  public ValidationResult checkProtein(CharSequence protein) {
+    return validateAmino(protein, mutationIndex, mutatedAmino);
+  }
+
+  @Override
+  public int getRequiredLength(int enclosing) {
+    return mutationIndex + Math.max(0, enclosing);
   }
 
   @Override
   public String getUniqueSolution(CharSequence output) {
     return "SNP-" + output;
   }
+
+  @Override
+  public void appendUniqueSolution(CharSequence output, StringBuilder sb) {
+    sb.append("SNP-").append(output);
+  }
 }
@@ -0,0 +1,145 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.mutation;
+
+import de.adrodoc55.bio.dna.peptide.extractor.ValidationException;
+
+/**
+ * The outcome of validating a protein against a {@link Mutation} or the residue alphabet without
+ * throwing a {@link ValidationException}. A successful validation returns the shared
+ * {@link #VALID} instance, a failure only stores the values needed to describe it. The message is
+ * formatted and the exception (with its stack trace) is created only if requested.
+ *
+ * @author Adrodoc55
+ */
+public final class ValidationResult {
+  private static final char NONE = '\0';
+  public static final ValidationResult VALID = new ValidationResult(0, NONE, NONE, null);
+
+  /**
+   * @param mutationIndex the (1 based) index of the incorrect aminoacid
+   * @param expected the expected char code
+   * @param actual the actual (upper case) char code
+   * @return the result of a failed check of an aminoacid
+   */
+  public static ValidationResult incorrectAmino(int mutationIndex, char expected, char actual) {
+    return new ValidationResult(mutationIndex, expected, actual, null);
+  }
+
+  /**
+   * @param position the (1 based) position of the residue in the protein
+   * @param residue the invalid residue
+   * @return the result of a protein that contains a character outside of the residue alphabet
+   */
+  public static ValidationResult invalidResidue(int position, char residue) {
+    return new ValidationResult(position, NONE, residue, null);
+  }
+
+  /**
+   * @param ex the exception of a failed validation
+   * @return the result describing {@code ex}
+   */
+  public static ValidationResult failed(ValidationException ex) {
+    return new ValidationResult(0, NONE, NONE, ex);
+  }
+
+  private final int index;
+  private final char expected;
+  private final char actual;
+  private final ValidationException exception;
+
+  private ValidationResult(int index, char expected, char actual,
+      ValidationException exception) {
+    this.index = index;
+    this.expected = expected;
+    this.actual = actual;
+    this.exception = exception;
+  }
+
+  public boolean isValid() {
+    return this == VALID;
+  }
+
+  /**
+   * @return the description of the failure
+   * @throws IllegalStateException if the validation succeeded
+   */
+  public String getMessage() throws IllegalStateException {
+    if (isValid()) {
+      throw new IllegalStateException("The validation succeeded");
+    }
+    if (exception != null) {
+      return exception.getLocalizedMessage();
+    }
+    if (expected == NONE) {
+      return "Invalid residue '" + actual + "' at index " + index;
+    }
+    return "Incorrect aminoacid at index " + index + "! Expected " + expected + " but got "
+        + actual;
+  }
+
+  /**
+   * @return the exception that {@link Mutation#validateProtein(CharSequence)} throws for this
+   *         failure
+   * @throws IllegalStateException if the validation succeeded
+   */
+  public ValidationException toException() throws IllegalStateException {
+    if (exception != null) {
+      return exception;
+    }
+    return new ValidationException(getMessage());
+  }
+
+  /**
+   * @throws ValidationException if the validation failed
+   */
+  public void throwIfInvalid() throws ValidationException {
+    if (!isValid()) {
+      throw toException();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return isValid() ? "VALID" : getMessage();
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An {@link OutputStream} that writes to a {@link WritableByteChannel} on a separate thread. The
+ * producer fills one of a fixed number of direct buffers while the writer thread drains the others,
+ * so computing the output and writing it overlap. Memory usage is capped at
+ * {@code bufferCount * bufferSize} bytes: if all buffers are waiting to be written, the producer
+ * blocks.
+ * <p>
+ * {@link #flush()} hands over the current buffer and waits until everything written so far has
+ * reached the channel. Errors of the writer thread are rethrown to the producer by the next
+ * operation.
+ *
+ * @author Adrodoc55
+ */
+public class AsyncChannelOutputStream extends OutputStream {
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private final WritableByteChannel channel;
+  private final BlockingQueue<ByteBuffer> freeBuffers;
+  private final BlockingQueue<ByteBuffer> fullBuffers;
+  private final Thread writer;
+  private final Object progress = new Object();
+  private long submitted;
+  private long written;
+  private volatile IOException failure;
+  private ByteBuffer current;
+  private boolean closed;
+
+  /**
+   * @param channel the destination
+   * @param bufferSize the size of each buffer in bytes
+   * @param bufferCount the number of buffers, at least 2
+   */
+  public AsyncChannelOutputStream(WritableByteChannel channel, int bufferSize, int bufferCount) {
+    if (bufferCount < 2) {
+      throw new IllegalArgumentException("At least two buffers are required");
+    }
+    this.channel = channel;
+    freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+    fullBuffers = new ArrayBlockingQueue<>(bufferCount + 1);
+    for (int i = 1; i < bufferCount; i++) {
+      freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+    }
+    current = ByteBuffer.allocateDirect(bufferSize);
+    writer = new Thread(this::drain, "async-output-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private void drain() {
+    while (true) {
+      ByteBuffer buffer;
+      try {
+        buffer = fullBuffers.take();
+      } catch (InterruptedException ex) {
+        failure = new InterruptedIOException("The output writer was interrupted");
+        return;
+      }
+      if (buffer == END) {
+        return;
+      }
+      buffer.flip();
+      try {
+        while (buffer.hasRemaining() && failure == null) {
+          channel.write(buffer);
+        }
+      } catch (IOException ex) {
+        failure = ex;
+      }
+      buffer.clear();
+      freeBuffers.add(buffer);
+      synchronized (progress) {
+        written++;
+        progress.notifyAll();
+      }
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (!current.hasRemaining()) {
+      handOver();
+    }
+    current.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (!current.hasRemaining()) {
+        handOver();
+      }
+      int count = Math.min(len, current.remaining());
+      current.put(b, off, count);
+      off += count;
+      len -= count;
+    }
+  }
+
+  private void handOver() throws IOException {
+    checkFailure();
+    try {
+      submitted++;
+      fullBuffers.put(current);
+      current = freeBuffers.take();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while handing over output");
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (current.position() > 0) {
+      handOver();
+    }
+    synchronized (progress) {
+      while (written < submitted) {
+        try {
+          progress.wait();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while flushing output");
+        }
+      }
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() throws IOException {
+    IOException failure = this.failure;
+    if (failure != null) {
+      throw new IOException("Failed to write output: " + failure.getLocalizedMessage(), failure);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flush();
+    } finally {
+      fullBuffers.add(END);
+      try {
+        writer.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.output;
+
+import static de.adrodoc55.bio.dna.peptide.extractor.output.ColumnarPeptideWriter.FOOTER_SIZE;
+import static de.adrodoc55.bio.dna.peptide.extractor.output.ColumnarPeptideWriter.MAGIC;
+import static de.adrodoc55.bio.dna.peptide.extractor.output.ColumnarPeptideWriter.VERSION;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
+
+/**
+ * Memory maps a file written by {@link ColumnarPeptideWriter} and provides random access to its
+ * peptides. Nothing is parsed or copied until a value is requested.
+ *
+ * @author Adrodoc55
+ */
+public class ColumnarPeptideReader implements Closeable {
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+  /**
+   * Chunks overlap by this many bytes, so a number never spans two chunks.
+   */
+  private static final int CHUNK_OVERLAP = Long.BYTES;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] chunks;
+  private final long size;
+
+  private final int count;
+  private final int headerCount;
+  private final long peptideOffsets;
+  private final long headerIds;
+  private final long positions;
+  private final long types;
+  private final long headerOffsets;
+  private final long checksum;
+
+  private byte[] buffer = new byte[256];
+
+  /**
+   * @param path the file to read
+   * @throws IOException if the file can not be read or is not a complete columnar peptide file
+   */
+  public ColumnarPeptideReader(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      int chunkCount = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+      chunks = new MappedByteBuffer[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        long offset = i * CHUNK_SIZE;
+        long length = Math.min(CHUNK_SIZE + CHUNK_OVERLAP, size - offset);
+        chunks[i] = channel.map(MapMode.READ_ONLY, offset, length);
+      }
+      long footer = size - FOOTER_SIZE;
+      if (size < Long.BYTES + FOOTER_SIZE || getLong(0) != MAGIC
+          || getLong(size - Long.BYTES) != MAGIC) {
+        throw new IOException("Not a complete columnar peptide file: " + path);
+      }
+      int version = getInt(size - Long.BYTES - Integer.BYTES);
+      if (version != VERSION) {
+        throw new IOException("Unsupported columnar peptide file version " + version + ": " + path);
+      }
+      count = (int) getLong(footer);
+      headerCount = (int) getLong(footer + 8);
+      peptideOffsets = getLong(footer + 16);
+      headerIds = getLong(footer + 24);
+      positions = getLong(footer + 32);
+      types = getLong(footer + 40);
+      headerOffsets = getLong(footer + 48);
+      checksum = getLong(footer + 64);
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * @return the number of peptides
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the number of headers in the header dictionary
+   */
+  public int getHeaderCount() {
+    return headerCount;
+  }
+
+  /**
+   * @param index the (0 based) index of a peptide
+   * @return the index of the header of the peptide in the header dictionary
+   */
+  public int getHeaderId(int index) {
+    return getInt(headerIds + (long) checkIndex(index) * Integer.BYTES);
+  }
+
+  /**
+   * @param headerId the (0 based) index in the header dictionary
+   * @return the header
+   */
+  public String getDictionaryHeader(int headerId) {
+    if (headerId < 0 || headerId >= headerCount) {
+      throw new IndexOutOfBoundsException("Header id " + headerId + " of " + headerCount);
+    }
+    long start = getLong(headerOffsets + (long) headerId * Long.BYTES);
+    long end = getLong(headerOffsets + (long) (headerId + 1) * Long.BYTES);
+    return new String(buffer, 0, copy(start, end), UTF_8);
+  }
+
+  public String getHeader(int index) {
+    return getDictionaryHeader(getHeaderId(index));
+  }
+
+  public MutationType getType(int index) {
+    return MutationType.fromOrdinal(get(types + checkIndex(index)));
+  }
+
+  public int getPosition(int index) {
+    return getInt(positions + (long) checkIndex(index) * Integer.BYTES);
+  }
+
+  /**
+   * @param index the (0 based) index of a peptide
+   * @return the offset of the first byte of the peptide in the file
+   */
+  public long getPeptideOffset(int index) {
+    return getLong(peptideOffsets + (long) checkIndex(index) * Long.BYTES);
+  }
+
+  public int getPeptideLength(int index) {
+    long start = getPeptideOffset(index);
+    return (int) (getLong(peptideOffsets + (long) (index + 1) * Long.BYTES) - start);
+  }
+
+  public String getPeptide(int index) {
+    long start = getPeptideOffset(index);
+    int length = copy(start, start + getPeptideLength(index));
+    return new String(buffer, 0, length, ISO_8859_1);
+  }
+
+  /**
+   * Compares the CRC32 stored in the footer with the actual content of the file.
+   *
+   * @throws IOException if the checksum does not match
+   */
+  public void verifyChecksum() throws IOException {
+    CRC32 crc = new CRC32();
+    long end = size - FOOTER_SIZE;
+    for (int i = 0; i < chunks.length && i * CHUNK_SIZE < end; i++) {
+      ByteBuffer chunk = chunks[i].duplicate();
+      chunk.position(0);
+      chunk.limit((int) Math.min(CHUNK_SIZE, end - i * CHUNK_SIZE));
+      crc.update(chunk);
+    }
+    if (crc.getValue() != checksum) {
+      throw new IOException("Checksum mismatch, the columnar peptide file is corrupt");
+    }
+  }
+
+  /**
+   * Writes all peptides of this file to {@code writer}, for instance to convert them to FASTA.
+   *
+   * @param writer
+   * @throws IOException
+   */
+  public void writeTo(PeptideWriter writer) throws IOException {
+    for (int i = 0; i < count; i++) {
+      writer.write(getHeader(i), getType(i), getPosition(i), getPeptide(i));
+    }
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Peptide " + index + " of " + count);
+    }
+    return index;
+  }
+
+  private byte get(long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+  }
+
+  private int getInt(long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].getInt((int) (pos & CHUNK_MASK));
+  }
+
+  private long getLong(long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].getLong((int) (pos & CHUNK_MASK));
+  }
+
+  /**
+   * Copies the bytes from {@code start} to {@code end} into {@link #buffer}.
+   *
+   * @return the number of bytes copied
+   */
+  private int copy(long start, long end) {
+    int length = (int) (end - start);
+    if (buffer.length < length) {
+      buffer = new byte[Math.max(length, 2 * buffer.length)];
+    }
+    int copied = 0;
+    while (copied < length) {
+      long pos = start + copied;
+      MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      int index = (int) (pos & CHUNK_MASK);
+      int count = Math.min(length - copied, chunk.limit() - index);
+      chunk.position(index);
+      chunk.get(buffer, copied, count);
+      copied += count;
+    }
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.output;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.google.common.io.Closer;
+
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
+
+/**
+ * Writes peptides into a binary file that can be memory mapped and scanned without parsing, see
+ * {@link ColumnarPeptideReader}. All numbers are big endian. The file consists of:
+ * <ol>
+ * <li>the magic number {@code PEPCOLS1}</li>
+ * <li>the bytes of all peptides without separators</li>
+ * <li>the peptide offsets: {@code count + 1} longs, peptide {@code i} spans from offset {@code i}
+ * to offset {@code i + 1}</li>
+ * <li>the header ids: {@code count} ints pointing into the header dictionary</li>
+ * <li>the mutation positions: {@code count} ints</li>
+ * <li>the mutation types: {@code count} bytes, the ordinals of {@link MutationType}</li>
+ * <li>the header dictionary: the UTF-8 bytes of the headers followed by {@code headerCount + 1}
+ * longs of offsets</li>
+ * <li>the footer: {@code count}, {@code headerCount}, the offsets of the peptide offsets, header
+ * ids, positions, types, header offsets and header bytes (longs), the CRC32 of everything before
+ * the footer (long), the format version (int) and the magic number again</li>
+ * </ol>
+ * Arrays of longs and ints are aligned to 8 bytes. Peptides are stored as ISO-8859-1, other
+ * characters are rejected.
+ * <p>
+ * Consecutive peptides with the same header share a dictionary entry, so a header is only stored
+ * more than once if its peptides are not written consecutively. The columns and the dictionary are
+ * spooled to temporary files, so the memory used by this writer does not grow with the output. They
+ * are appended when this writer is closed, the file is incomplete before that.
+ *
+ * @author Adrodoc55
+ */
+public class ColumnarPeptideWriter implements PeptideWriter {
+  static final long MAGIC = 0x504550434f4c5331L;
+  static final int VERSION = 1;
+  static final int FOOTER_SIZE = 9 * Long.BYTES + Integer.BYTES + Long.BYTES;
+
+  private final CRC32 checksum = new CRC32();
+  private final DataOutputStream out;
+  private long position;
+  private byte[] buffer = new byte[256];
+
+  private final Closer columns = Closer.create();
+  private final Column peptideOffsets;
+  private final Column headerIds;
+  private final Column positions;
+  private final Column types;
+  private final Column headerBytes;
+  private final Column headerOffsets;
+  private int count;
+  private int headerCount;
+  private long headerBytesLength;
+  private String lastHeader;
+
+  public ColumnarPeptideWriter(OutputStream out) throws IOException {
+    boolean created = false;
+    try {
+      peptideOffsets = columns.register(new Column());
+      headerIds = columns.register(new Column());
+      positions = columns.register(new Column());
+      types = columns.register(new Column());
+      headerBytes = columns.register(new Column());
+      headerOffsets = columns.register(new Column());
+      created = true;
+    } finally {
+      if (!created) {
+        columns.close();
+      }
+    }
+    this.out = new DataOutputStream(new CheckedOutputStream(out, checksum));
+    writeLong(MAGIC);
+  }
+
+  @Override
+  public void write(String header, MutationType type, int position, CharSequence peptide)
+      throws IOException {
+    int length = peptide.length();
+    if (buffer.length < length) {
+      buffer = new byte[Math.max(length, 2 * buffer.length)];
+    }
+    for (int i = 0; i < length; i++) {
+      char c = peptide.charAt(i);
+      if (c > 0xff) {
+        throw new IOException("The peptide " + peptide + " of " + header + " contains '" + c
+            + "', which can not be stored in a columnar peptide file");
+      }
+      buffer[i] = (byte) c;
+    }
+    if (!header.equals(lastHeader)) {
+      byte[] bytes = header.getBytes(UTF_8);
+      headerOffsets.out.writeLong(headerBytesLength);
+      headerBytes.out.write(bytes);
+      headerBytesLength += bytes.length;
+      headerCount++;
+      lastHeader = header;
+    }
+    peptideOffsets.out.writeLong(this.position);
+    headerIds.out.writeInt(headerCount - 1);
+    positions.out.writeInt(position);
+    types.out.writeByte(type.ordinal());
+    count++;
+
+    out.write(buffer, 0, length);
+    this.position += length;
+  }
+
+  /**
+   * Flushes the peptides written so far. The file only becomes readable when this writer is
+   * closed.
+   */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      writeColumns();
+    } catch (Throwable ex) {
+      throw columns.rethrow(ex);
+    } finally {
+      columns.register(out);
+      columns.close();
+    }
+  }
+
+  private void writeColumns() throws IOException {
+    long peptidesEnd = position;
+    align();
+    long peptideOffsetsStart = position;
+    append(peptideOffsets);
+    writeLong(peptidesEnd);
+    long headerIdsStart = position;
+    append(headerIds);
+    align();
+    long positionsStart = position;
+    append(positions);
+    long typesStart = position;
+    append(types);
+
+    long headerBytesStart = position;
+    append(headerBytes);
+    align();
+    long headerOffsetsStart = position;
+    try (DataInputStream in = headerOffsets.read()) {
+      for (int i = 0; i < headerCount; i++) {
+        writeLong(headerBytesStart + in.readLong());
+      }
+    }
+    writeLong(headerBytesStart + headerBytesLength);
+
+    out.flush();
+    long crc = checksum.getValue();
+    writeLong(count);
+    writeLong(headerCount);
+    writeLong(peptideOffsetsStart);
+    writeLong(headerIdsStart);
+    writeLong(positionsStart);
+    writeLong(typesStart);
+    writeLong(headerOffsetsStart);
+    writeLong(headerBytesStart);
+    writeLong(crc);
+    writeInt(VERSION);
+    writeLong(MAGIC);
+  }
+
+  /**
+   * Appends the content of {@code column} to the output.
+   */
+  private void append(Column column) throws IOException {
+    column.out.close();
+    position += Files.copy(column.file.toPath(), out);
+  }
+
+  private void align() throws IOException {
+    while (position % Long.BYTES != 0) {
+      out.write(0);
+      position++;
+    }
+  }
+
+  private void writeLong(long value) throws IOException {
+    out.writeLong(value);
+    position += Long.BYTES;
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.writeInt(value);
+    position += Integer.BYTES;
+  }
+
+  /**
+   * A column that is spooled to a temporary file until it is appended to the output.
+   */
+  private static class Column implements Closeable {
+    private final File file;
+    private final DataOutputStream out;
+
+    Column() throws IOException {
+      file = File.createTempFile("peptide-extractor-", ".column");
+      try {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      } catch (IOException ex) {
+        file.delete();
+        throw ex;
+      }
+    }
+
+    DataInputStream read() throws IOException {
+      out.close();
+      return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        file.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.output;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static de.adrodoc55.bio.dna.FastaConstants.MAX_LINE_LENGTH;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import de.adrodoc55.bio.dna.PackedProtein;
+import de.adrodoc55.bio.dna.peptide.extractor.mutation.MutationType;
+
+/**
+ * Writes each peptide as a FASTA record with the header of its input record. The peptides are
+ * wrapped after a configurable number of characters, by default
+ * {@link de.adrodoc55.bio.dna.FastaConstants#MAX_LINE_LENGTH}.
+ * <p>
+ * The records are encoded directly into a reusable byte buffer, inserting the line separators in
+ * place, and the buffer is only handed to the underlying stream when it is full. ASCII characters
+ * are copied as is (a {@link PackedProtein} decodes its residues in bulk), any other character is
+ * encoded with the default charset.
+ *
+ * @author Adrodoc55
+ */
+public class FastaPeptideWriter implements PeptideWriter {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] LINE_SEPARATOR =
+      System.lineSeparator().getBytes(Charset.defaultCharset());
+
+  private final OutputStream out;
+  private final int lineLength;
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int count;
+
+  public FastaPeptideWriter(OutputStream out) {
+    this(out, MAX_LINE_LENGTH);
+  }
+
+  /**
+   * @param out the stream to write to
+   * @param lineLength the maximum number of characters per sequence line or 0 to write each
+   *        peptide on a single line
+   */
+  public FastaPeptideWriter(OutputStream out, int lineLength) {
+    checkArgument(lineLength >= 0, "The line length must not be negative");
+    this.out = out;
+    this.lineLength = lineLength;
+  }
+
+  @Override
+  public void write(String header, MutationType type, int position, CharSequence peptide)
+      throws IOException {
+    append(header, 0, header.length());
+    newLine();
+    int length = peptide.length();
+    int lineLength = this.lineLength > 0 ? this.lineLength : Math.max(1, length);
+    int start = 0;
+    do {
+      int end = Math.min(length, start + lineLength);
+      append(peptide, start, end);
+      newLine();
+      start = end;
+    } while (start < length);
+  }
+
+  private void append(CharSequence chars, int start, int end) throws IOException {
+    int length = end - start;
+    reserve(length);
+    if (chars instanceof PackedProtein) {
+      if (((PackedProtein) chars).getBytes(start, end, buffer, count)) {
+        count += length;
+        return;
+      }
+    } else if (appendAscii(chars, start, end)) {
+      count += length;
+      return;
+    }
+    byte[] bytes = chars.subSequence(start, end).toString().getBytes(Charset.defaultCharset());
+    reserve(bytes.length);
+    System.arraycopy(bytes, 0, buffer, count, bytes.length);
+    count += bytes.length;
+  }
+
+  private boolean appendAscii(CharSequence chars, int start, int end) {
+    for (int i = start, b = count; i < end; i++, b++) {
+      char c = chars.charAt(i);
+      if (c >= 0x80) {
+        return false;
+      }
+      buffer[b] = (byte) c;
+    }
+    return true;
+  }
+
+  private void newLine() throws IOException {
+    reserve(LINE_SEPARATOR.length);
+    for (byte b : LINE_SEPARATOR) {
+      buffer[count++] = b;
+    }
+  }
+
+  /**
+   * Makes sure that {@code length} bytes can be appended to the buffer, writing its content to the
+   * underlying stream or growing it if necessary.
+   */
+  private void reserve(int length) throws IOException {
+    if (buffer.length - count < length) {
+      flushBuffer();
+      if (buffer.length < length) {
+        buffer = new byte[Math.max(length, 2 * buffer.length)];
+      }
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (count > 0) {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBuffer();
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Peptide Extractor: A command line tool for transforming the output of the Ensembl Variant Effect
+ * Predictor ProteinSeqs Plugin into NetMHC-readable peptide fragments that are affected by
+ * mutation.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * This file is part of Peptide Extractor.
+ *
+ * Peptide Extractor is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Peptide Extractor is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Peptide Extractor.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *
+ * Peptide Extractor: Ein Kommandozeilen Werkzeug um den Output des Ensembl Variant Effect Predictor
+ * ProteinSeqs Plugins in NetMHC-lesbare Peptid Fragmente die von einer Mutation beeinflusst sind
+ * umzuwandeln.
+ *
+ * © Copyright (C) 2017 Adrodoc55
+ *
+ * Diese Datei ist Teil von Peptide Extractor.
+ *
+ * Peptide Extractor ist freie Software: Sie können diese unter den Bedingungen der GNU General
+ * Public License, wie von der Free Software Foundation, Version 3 der Lizenz oder (nach Ihrer Wahl)
+ * jeder späteren veröffentlichten Version, weiterverbreiten und/oder modifizieren.
+ *
+ * Peptide Extractor wird in der Hoffnung, dass es nützlich sein wird, aber OHNE JEDE
+ * GEWÄHRLEISTUNG, bereitgestellt; sogar ohne die implizite Gewährleistung der MARKTFÄHIGKEIT oder
+ * EIGNUNG FÜR EINEN BESTIMMTEN ZWECK. Siehe die GNU General Public License für weitere Details.
+ *
+ * Sie sollten eine Kopie der GNU General Public License zusammen mit Peptide Extractor erhalten
+ * haben. Wenn nicht, siehe <http://www.gnu.org/licenses/>.
+ */
+package de.adrodoc55.bio.dna.peptide.extractor.output;
+
+import static de.adrodoc55.bio.dna.FastaConstants.HEADER_PREFIX;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+
+/**
+ * Distributes peptides across one or more {@link PeptideWriter}s. Each shard has its own writer and
+ * thus its own buffers, so consumers can process the shards independently.
+ *
+ * @author Adrodoc55
+ */
+public class ShardedOutput implements Flushable, Closeable {
+  /**
+   * Returns the file of shard {@code index} of {@code output}: {@code peptides.fa} becomes
+   * {@code peptides.0.fa}, {@code peptides.1.fa} and so on.
+   *
+   * @param output the output file
+   * @param index the (0 based) index of the shard
+   * @return the file of the shard
+   */
+  public static File getShardFile(File output, int index) {
+    String extension = Files.getFileExtension(output.getName());
+    String name = Files.getNameWithoutExtension(output.getName()) + '.' + index;
+    if (!extension.isEmpty()) {
+      name += '.' + extension;
+    }
+    return new File(output.getParentFile(), name);
+  }
+
+  /**
+   * @param header a FASTA header
+   * @return the text between {@code >} and the first {@code :} of {@code header} or the entire
+   *         header if it does not contain a {@code :}
+   */
+  public static String getGene(String header) {
+    int begin = header.startsWith(HEADER_PREFIX) ? HEADER_PREFIX.length() : 0;
+    int end = header.indexOf(':', begin);
+    return header.substring(begin, end < 0 ? header.length() : end);
+  }
+
+  private final ImmutableList<PeptideWriter> shards;
+  private final Partitioning partitioning;
+
+  /**
+   * @param shards the writers of the shards
+   * @param partitioning how peptides are distributed
+   */
+  public ShardedOutput(List<? extends PeptideWriter> shards, Partitioning partitioning) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    this.shards = ImmutableList.copyOf(shards);
+    this.partitioning = partitioning;
+  }
+
+  public int size() {
+    return shards.size();
+  }
+
+  /**
+   * @param header the header of the record the peptide was extracted from
+   * @param uniqueSolution the key identifying duplicate peptides, only required when partitioning
+   *        by {@link Partitioning#KEY}
+   * @return the writer of the shard that the peptide belongs to
+   */
+  public PeptideWriter get(String header, String uniqueSolution) {
+    if (shards.size() == 1) {
+      return shards.get(0);
+    }
+    String key = partitioning == Partitioning.GENE ? getGene(header) : uniqueSolution;
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return shards.get(Math.floorMod(hash, shards.size()));
+  }
+
+  @Override
+  public void flush() throws IOException {
+    for (PeptideWriter shard : shards) {
+      shard.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    Closer closer = Closer.create();
+    for (PeptideWriter shard : shards) {
+      closer.register(shard);
+    }
+    closer.close();
+  }
+}